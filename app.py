@@ -3,22 +3,29 @@ QR Code Generation Web Application
 
 Author: Zain Alshammari
 
-This Flask application provides a web interface for generating Version 1 and 2 QR codes
+This Flask application provides a web interface for generating Version 1 to 40 QR codes
 using custom logic implemented in separate modules. The application demonstrates
  the integration of multiple programming paradigms and third-party libraries.
 
 Key Features:
 - Web-based interface for QR code generation
-- Support for QR Version 1 (up to 17 bytes) and Version 2 (up to 32 bytes)
-- Error Correction Level L implementation using Reed-Solomon codes
-- Automatic version selection based on input length
+- Support for QR Versions 1 (up to 17 bytes) to 40 (up to 2953 bytes)
+- Error Correction Levels L, M, Q and H using Reed-Solomon codes with block interleaving
+- Optional EC upgrade: the highest level that still fits the smallest version is used
+- Optimal Numeric/Alphanumeric/Byte/Kanji segmentation and automatic version selection
+- Japanese text in Kanji Mode (13 bits per Shift-JIS character), other text as UTF-8 via ECI (designator 26)
 - Optimal mask pattern selection for improved readability
+- Structured Append: long input split across up to 16 linked symbols, assembled in parallel
+- Micro QR (M1-M4, 11x11 to 17x17) for short payloads
+- Rectangular Micro QR (rMQR, 7 to 17 modules high) for narrow labels
+- Optional self-verification: each QR symbol is read back, corrected and compared
+  (on by default with QR_SELF_VERIFY=1), with pass/fail counts kept per process
 - Real-time QR code rendering as HTML table
 
 Pipeline Overview:
-1. Byte-mode encoding and version determination
-2. Reed-Solomon error correction (Level L) using the 'reedsolo' library
-3. Bitstream structuring including remainder bits
+1. Mixed-mode (Numeric/Alphanumeric/Byte/Kanji) encoding and version determination
+2. Reed-Solomon error correction (Level L, M, Q or H) with the in-project GF(256) encoder
+3. Block interleaving and bitstream structuring including remainder bits
 4. Module placement into the QR matrix (finder, separator, timing, alignment patterns)
 5. Optimal mask pattern application (evaluating all 8 masks based on penalty scores)
 6. Format information string generation and placement
@@ -27,42 +34,108 @@ Pipeline Overview:
 The application follows QR code ISO/IEC 18004:2015 specifications.
 """
 
+import logging
+import os
+from concurrent.futures import ProcessPoolExecutor
+from typing import List, Union
+
 from flask import Flask, render_template, request
-from data_encoding import encode_byte_mode
-from error_correction import generate_error_correction
+from bit_buffer import BitBuffer
+from data_encoding import (
+    Payload,
+    encode_micro_text,
+    encode_rmqr_text,
+    encode_structured_append,
+    encode_text,
+    encode_text_max_ecc,
+    prepare_payload,
+)
+from error_correction import build_final_codewords, build_micro_final_bits, build_rmqr_final_codewords
 from matrix_layout import (
+    FORMAT_INFO_BITS,
+    MICRO_FORMAT_INFO_BITS,
+    RMQR_FORMAT_INFO_BITS,
+    generate_micro_qr_module,
     generate_qr_module,
-    get_format_string,
+    generate_rmqr_module,
     place_format_information,
+    place_micro_format_information,
+    place_rmqr_format_information,
     get_size_from_version,
 )
-from matrix_masking import find_best_pattern, create_function_pattern_matrix
+from matrix_masking import (
+    apply_rmqr_mask,
+    create_function_pattern_matrix,
+    create_micro_function_pattern_matrix,
+    create_rmqr_function_pattern_matrix,
+    find_best_micro_pattern,
+    find_best_pattern,
+)
+from qr_tables import MICRO_SYMBOL_NUMBERS, REMAINDER_BITS, RMQR_REMAINDER_BITS, RMQR_SIZES
+from qr_verification import get_verification_counts, record_verification, verify_qr_matrix
 
 app = Flask(__name__)
+logger = logging.getLogger(__name__)
+
+# Read every generated QR symbol back and count failures (QR_SELF_VERIFY=1 to enable by default)
+SELF_VERIFY = os.environ.get("QR_SELF_VERIFY", "0") == "1"
 
 @app.route('/')
 def home():
     return render_template('index.html')
 
-def assemble_qr_matrix(text: str, explain=False):
-    # Get data codewords and version
-    data_cw, version = encode_byte_mode(text)
+@app.route('/verification')
+def verification_counts():
+    """Report how many self-verified symbols read back correctly since start-up."""
+    return get_verification_counts()
+
+def assemble_qr_matrix(text: Union[str, Payload], explain=False, ecc_level='L', verify=None, upgrade_ecc=False):
+    # Encode the text to bytes once (ISO-8859-1, Shift-JIS for Kanji, or UTF-8 behind an ECI header)
+    payload = prepare_payload(text) if isinstance(text, str) else text
 
-    # Convert binary strings to integers for error correction
-    data_cw_int = [int(c, 2) for c in data_cw]
+    # Get data codewords and version; with upgrade_ecc, spare capacity raises the level instead of padding
+    if upgrade_ecc:
+        data_buffer, version, ecc_level = encode_text_max_ecc(payload, ecc_level)
+    else:
+        data_buffer, version = encode_text(payload, ecc_level)
 
-    # Generate error correction codewords
-    ecc_cw = generate_error_correction(data_cw_int, version)
+    verify = SELF_VERIFY if verify is None else verify
+    qr_data = assemble_encoded_symbol(data_buffer, version, ecc_level, explain, verify)
+    if verify:
+        record_verification(qr_data["verified"])
+    if not explain:
+        # In assemble_qr_matrix, before returning
+        final_matrix = qr_data["final"]
+        print(f"Version: {version}-{ecc_level}, Matrix size: {len(final_matrix)}x{len(final_matrix[0])}")
+        print(f"Data length: {len(payload.data)} bytes{' (UTF-8, ECI 26)' if payload.eci is not None else ''}")
+    qr_data["ecc_level"] = ecc_level
+    return qr_data
 
-    # Combine data and ECC codewords
-    all_codewords = data_cw + ecc_cw
 
-    # Convert to final bitstream
-    final_bits = ''.join(all_codewords)
+def assemble_encoded_symbol(data_buffer: BitBuffer, version: int, ecc_level='L', explain=False, verify=False):
+    """
+    Turn encoded data codewords into a finished QR matrix.
 
-    # Add remainder bits for Version 2
-    if version == 2:
-        final_bits += '0' * 7
+    Args:
+        data_buffer (BitBuffer): Data codewords including terminator and pad bytes.
+        version (int): QR version the data was encoded for.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+        explain (bool): Also return the intermediate matrices of each step.
+        verify (bool): Read the finished matrix back and compare it with the data codewords.
+
+    Returns:
+        dict: "final" matrix, plus "step1".."step4" when explain is set and "verified" when verify is set.
+    """
+    data_cw = data_buffer.to_bytes()
+
+    # Generate error correction codewords and interleave the blocks
+    final_codewords = build_final_codewords(data_cw, version, ecc_level)
+
+    # Convert to the final bitstream
+    final_bits = BitBuffer.from_bytes(final_codewords)
+
+    # Add remainder bits (Versions 2-6 and 14-34)
+    final_bits.append_bits(0, REMAINDER_BITS[version])
 
     # Generate QR matrix with all patterns
     matrix = generate_qr_module(final_bits, version)
@@ -73,40 +146,150 @@ def assemble_qr_matrix(text: str, explain=False):
     # Find best mask pattern
     masked_matrix, best_mask = find_best_pattern(matrix, mask_map)
 
-    # Generate format string
-    fmt = get_format_string('01', format(best_mask, '03b'))
+    # Precomputed format information bits (both copies) for this level and mask
+    fmt = FORMAT_INFO_BITS[(ecc_level, best_mask)]
 
-    # Convert matrix to integers only
-    int_matrix = []
-    for row in masked_matrix:
-        int_row = []
-        for cell in row:
-            if isinstance(cell, int):
-                int_row.append(cell)
-            elif cell == 'R':
-                int_row.append(0)  # Reserved cells default to 0
-            else:
-                int_row.append(0)
-        int_matrix.append(int_row)
+    # Convert matrix to light/dark modules only (reserved cells default to 0)
+    int_matrix = masked_matrix.to_modules()
 
     # Place format information
     final_matrix = place_format_information(int_matrix, fmt, get_size_from_version(version))
 
+    result = {"final": final_matrix}
+    if verify:
+        result["verified"] = verify_qr_matrix(final_matrix, version, ecc_level, data_cw)
+
     if explain:
         # Generate steps for visualization
-        steps = {
-            "step1": generate_qr_module(''.join(data_cw), version),
-            "step2": generate_qr_module(''.join(data_cw + ecc_cw), version),
+        result.update({
+            "step1": generate_qr_module(data_buffer, version),
+            "step2": generate_qr_module(BitBuffer.from_bytes(final_codewords), version),
             "step3": matrix,
             "step4": masked_matrix,
-            "final": final_matrix
-        }
-        return steps
-    # In assemble_qr_matrix, before returning
-    print(f"Version: {version}, Matrix size: {len(final_matrix)}x{len(final_matrix[0])}")
-    print(f"Data length: {len(text)} chars, {len(text.encode('iso-8859-1'))} bytes")
+        })
+
+    return result
+
+
+def assemble_micro_qr_matrix(text: Union[str, Payload], ecc_level='L'):
+    """
+    Build the smallest Micro QR symbol (M1-M4) that holds text.
+
+    Args:
+        text (Union[str, Payload]): The input text or a prepared payload (ISO-8859-1 or Shift-JIS Kanji).
+        ecc_level (str): Error correction level ('L', 'M' or 'Q').
+
+    Returns:
+        dict: "final" matrix and "version" (the Micro QR version, 1-4).
+    """
+    data_bits, micro_version = encode_micro_text(text, ecc_level)
+
+    # Single Reed-Solomon block, no interleaving and no remainder bits
+    final_bits = build_micro_final_bits(data_bits, micro_version, ecc_level)
+    matrix = generate_micro_qr_module(final_bits, micro_version)
+
+    # Pick the best of the 4 Micro QR masks
+    mask_map = create_micro_function_pattern_matrix(micro_version)
+    masked_matrix, best_mask = find_best_micro_pattern(matrix, mask_map)
+
+    int_matrix = masked_matrix.to_modules()
+    fmt = MICRO_FORMAT_INFO_BITS[(MICRO_SYMBOL_NUMBERS[(micro_version, ecc_level)], best_mask)]
+    final_matrix = place_micro_format_information(int_matrix, fmt)
+
+    logger.debug("Micro QR M%d-%s, Matrix size: %dx%d", micro_version, ecc_level, len(final_matrix), len(final_matrix[0]))
+    return {"final": final_matrix, "version": micro_version}
+
+
+def assemble_rmqr_matrix(text: Union[str, Payload], ecc_level='M', max_height=17):
+    """
+    Build the smallest rectangular Micro QR (rMQR) symbol that holds text.
+
+    rMQR only defines Levels M and H, so L is raised to M and Q to H; the
+    level actually used is returned with the symbol.
+
+    Args:
+        text (Union[str, Payload]): The input text or a prepared payload (ISO-8859-1 or Shift-JIS Kanji).
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+        max_height (int): Tallest symbol allowed (7-17 modules).
+
+    Returns:
+        dict: "final" matrix (height x width), "version" (the version indicator, 0-31)
+        and "ecc_level" (the level used, 'M' or 'H').
+    """
+    rmqr_level = {'L': 'M', 'Q': 'H'}.get(ecc_level, ecc_level)
+    if rmqr_level != ecc_level:
+        logger.info("rMQR has no Level %s, using Level %s", ecc_level, rmqr_level)
+    ecc_level = rmqr_level
+    data_buffer, version_indicator = encode_rmqr_text(text, ecc_level, max_height)
+
+    final_codewords = build_rmqr_final_codewords(data_buffer.to_bytes(), version_indicator, ecc_level)
+    final_bits = BitBuffer.from_bytes(final_codewords)
+    final_bits.append_bits(0, RMQR_REMAINDER_BITS[version_indicator])
+
+    matrix = generate_rmqr_module(final_bits, version_indicator)
+    masked_matrix = apply_rmqr_mask(matrix, create_rmqr_function_pattern_matrix(version_indicator))
+
+    int_matrix = masked_matrix.to_modules()
+    final_matrix = place_rmqr_format_information(int_matrix, RMQR_FORMAT_INFO_BITS[(version_indicator, ecc_level)])
+
+    height, width = RMQR_SIZES[version_indicator]
+    logger.debug("rMQR R%dx%d-%s", height, width, ecc_level)
+    return {"final": final_matrix, "version": version_indicator, "ecc_level": ecc_level}
+
+
+def _assemble_symbol_part(part):
+    """Worker entry point for one Structured Append symbol: part is (data_codewords, version, ecc_level, verify).
+
+    Returns the final matrix and the verification result (None when not verified); the
+    result is counted by the caller, since counters in a worker process would be lost.
+    """
+    data_cw, version, ecc_level, verify = part
+    data_buffer = BitBuffer.from_bytes(data_cw)
+    symbol = assemble_encoded_symbol(data_buffer, version, ecc_level, verify=verify)
+    return symbol["final"], symbol.get("verified")
+
+
+def assemble_structured_append(text: Union[str, Payload], ecc_level='L', max_version=40,
+                               max_workers=None, verify=None) -> List[dict]:
+    """
+    Split text across Structured Append symbols and assemble them in parallel.
+
+    Each symbol's error correction, module placement and mask search is
+    independent, so the symbols are built in a process pool. Platforms that
+    cannot start worker processes (serverless runtimes without /dev/shm, for
+    example) fall back to building them one after another.
+
+    Args:
+        text (Union[str, Payload]): The input text or a prepared payload.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+        max_version (int): Largest version allowed for each symbol.
+        max_workers (int): Worker process count (None lets the pool decide).
+        verify (bool): Read each symbol back and count failures (None uses SELF_VERIFY).
+
+    Returns:
+        List[dict]: One {"final", "version"} entry per symbol, in sequence order.
+    """
+    verify = SELF_VERIFY if verify is None else verify
+    payload = prepare_payload(text) if isinstance(text, str) else text
+    symbols = encode_structured_append(payload, ecc_level, max_version)
+    parts = [(buffer.to_bytes(), version, ecc_level, verify) for buffer, version in symbols]
+
+    matrices = None
+    if len(parts) > 1:
+        try:
+            with ProcessPoolExecutor(max_workers=max_workers) as pool:
+                matrices = list(pool.map(_assemble_symbol_part, parts))
+        except (OSError, NotImplementedError):
+            matrices = None  # No multiprocessing support here, build sequentially
+    if matrices is None:
+        matrices = [_assemble_symbol_part(part) for part in parts]
+    if verify:
+        for _, verified in matrices:
+            record_verification(verified)
 
-    return {"final": final_matrix}
+    logger.debug("Structured Append: %d symbol(s), versions %s", len(parts), [version for _, version in symbols])
+    logger.debug("Data length: %d bytes%s", len(payload.data), ' (UTF-8, ECI 26)' if payload.eci is not None else '')
+    return [{"final": matrix, "version": version} for (matrix, _), (_, version) in zip(matrices, symbols)]
 
 
 def matrix_to_html(matrix, fg="#000000", bg="#ffffff", shape="square", size="medium", frame="none", filter_mode="none"):
@@ -144,31 +327,61 @@ def index_page():
     frame = request.form.get("frame", "none")
     filter_mode = request.form.get("filter", "none")
     explain_steps = request.form.get("explain_steps") == "on"
+    ecc_level = request.form.get("ecc_level", "L")
+    structured_append = request.form.get("structured_append") == "on"
+    upgrade_ecc = request.form.get("upgrade_ecc") == "on"
+    symbol_type = request.form.get("symbol_type", "qr")
+    max_version = request.form.get("max_version", "40")
 
     if request.method == "POST":
         if not text_val or len(text_val.strip()) == 0:
             error = "Input text cannot be empty."
-        elif len(text_val.encode('iso-8859-1', errors='ignore')) > 32:
-            error = "Input text too long (max 32 bytes)"
         else:
             try:
-                qr_data = assemble_qr_matrix(text_val, explain=explain_steps)
-                qr_html = matrix_to_html(qr_data["final"], fg=fg_color, bg=bg_color, shape=shape, size=size,
+                if symbol_type == "rmqr":
+                    qr_data = assemble_rmqr_matrix(text_val, ecc_level=ecc_level)
+                    height, width = RMQR_SIZES[qr_data["version"]]
+                    # rMQR has only Levels M and H, so show the level actually used
+                    qr_html = (f"<p>R{height}x{width}, Level {qr_data['ecc_level']}</p>"
+                               + matrix_to_html(qr_data["final"], fg=fg_color, bg=bg_color, shape=shape, size=size,
+                                                frame=frame, filter_mode=filter_mode))
+                elif symbol_type == "micro":
+                    qr_data = assemble_micro_qr_matrix(text_val, ecc_level=ecc_level)
+                    qr_html = matrix_to_html(qr_data["final"], fg=fg_color, bg=bg_color, shape=shape, size=size,
+                                             frame=frame, filter_mode=filter_mode)
+                elif structured_append:
+                    # Long input is split across linked symbols, shown in sequence order
+                    symbols = assemble_structured_append(text_val, ecc_level=ecc_level,
+                                                         max_version=int(max_version))
+                    qr_html = "".join(
+                        f"<p>Symbol {i} of {len(symbols)} (Version {symbol['version']})</p>"
+                        + matrix_to_html(symbol["final"], fg=fg_color, bg=bg_color, shape=shape, size=size,
                                          frame=frame, filter_mode=filter_mode)
-                if explain_steps:
-                    step_images = [
-                        {"title": "Step 1: Byte Encoding", "image": matrix_to_html(qr_data["step1"])},
-                        {"title": "Step 2: Error Correction", "image": matrix_to_html(qr_data["step2"])},
-                        {"title": "Step 3: Pre-Masking", "image": matrix_to_html(qr_data["step3"])},
-                        {"title": "Step 4: Final Masked", "image": matrix_to_html(qr_data["step4"])},
-                    ]
+                        for i, symbol in enumerate(symbols, 1)
+                    )
+                else:
+                    # Length is validated by the encoder on the same encoded bytes it selects
+                    # the version from, so an over-long input is reported by its ValueError
+                    qr_data = assemble_qr_matrix(text_val, explain=explain_steps, ecc_level=ecc_level,
+                                                 upgrade_ecc=upgrade_ecc)
+                    qr_html = matrix_to_html(qr_data["final"], fg=fg_color, bg=bg_color, shape=shape, size=size,
+                                             frame=frame, filter_mode=filter_mode)
+                    if explain_steps:
+                        step_images = [
+                            {"title": "Step 1: Data Encoding", "image": matrix_to_html(qr_data["step1"])},
+                            {"title": "Step 2: Error Correction", "image": matrix_to_html(qr_data["step2"])},
+                            {"title": "Step 3: Pre-Masking", "image": matrix_to_html(qr_data["step3"])},
+                            {"title": "Step 4: Final Masked", "image": matrix_to_html(qr_data["step4"])},
+                        ]
             except Exception as e:
                 error = f"Error: {str(e)}"
 
     return render_template("index.html", qr_html=qr_html, text=text_val, error=error,
                            fg_color=fg_color, bg_color=bg_color, shape=shape, size=size,
                            frame=frame, filter=filter_mode, explain_steps=explain_steps,
-                           step_images=step_images)
+                           step_images=step_images, ecc_level=ecc_level,
+                           structured_append=structured_append, max_version=max_version, upgrade_ecc=upgrade_ecc,
+                           symbol_type=symbol_type)
 
 
 if __name__ == "__main__":
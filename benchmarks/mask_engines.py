@@ -0,0 +1,72 @@
+"""
+QR Code Mask Engine Benchmark
+
+Times the mask search of find_best_pattern with the bitboard engine and with
+the numpy engine for every QR version, and reports the smallest symbol size
+from which the numpy engine is faster for that version and every larger one.
+That size is the value to give NUMPY_ENGINE_MIN_SIZE in matrix_masking
+before enabling the engine with QR_NUMPY_MASKING=1.
+
+Run from the repository root with numpy installed:
+    python benchmarks/mask_engines.py [repeats]
+"""
+
+import os
+import random
+import sys
+import time
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import matrix_layout  # noqa: E402
+import matrix_masking  # noqa: E402
+from bit_buffer import BitBuffer  # noqa: E402
+
+
+def time_mask_search(symbol, function_map, use_numpy: bool, repeats: int) -> float:
+    """Return the best of repeats timings of find_best_pattern, in milliseconds."""
+    matrix_masking.NUMPY_ENGINE_ENABLED = use_numpy
+    matrix_masking.NUMPY_ENGINE_MIN_SIZE = 0
+    matrix_masking.find_best_pattern(symbol, function_map)  # Warm the mask plane caches
+    timings = []
+    for _ in range(repeats):
+        start = time.perf_counter()
+        matrix_masking.find_best_pattern(symbol, function_map)
+        timings.append(time.perf_counter() - start)
+    return min(timings) * 1000
+
+
+def main() -> None:
+    if matrix_masking.np is None:
+        sys.exit("numpy is not installed; install it with pip install -r requirements-numpy.txt")
+    repeats = int(sys.argv[1]) if len(sys.argv) > 1 else 20
+    rng = random.Random(57)
+
+    numpy_faster = {}
+    print(f"{'Version':>7} {'Size':>5} {'Bitboard ms':>12} {'NumPy ms':>9}")
+    for version in range(1, 41):
+        bit_count = matrix_layout.get_expected_bitstream_length_for_version(version)
+        bits = BitBuffer()
+        bits.append_bits(rng.getrandbits(bit_count), bit_count)
+        symbol = matrix_layout.generate_qr_module(bits, version)
+        function_map = matrix_masking.create_function_pattern_matrix(version)
+
+        bitboard_ms = time_mask_search(symbol, function_map, False, repeats)
+        numpy_ms = time_mask_search(symbol, function_map, True, repeats)
+        numpy_faster[symbol.height] = numpy_ms < bitboard_ms
+        print(f"{version:>7} {symbol.height:>5} {bitboard_ms:>12.3f} {numpy_ms:>9.3f}")
+
+    # Smallest size from which numpy wins for every larger symbol too
+    crossover = None
+    for size in sorted(numpy_faster, reverse=True):
+        if not numpy_faster[size]:
+            break
+        crossover = size
+    if crossover is None:
+        print("The bitboard engine is faster at Version 40; leave the numpy engine disabled.")
+    else:
+        print(f"NUMPY_ENGINE_MIN_SIZE = {crossover}")
+
+
+if __name__ == '__main__':
+    main()
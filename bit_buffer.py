@@ -0,0 +1,171 @@
+"""
+QR Code Bit Buffer Module
+
+This module provides the packed bit buffer that is passed between the stages of
+the QR pipeline (data encoding, error correction and module placement) instead of
+strings of '0' and '1' characters.
+
+Key Features:
+- Bits are packed MSB-first into a bytearray, eight bits per byte
+- Appending an n-bit value is done with integer shifts, no string formatting
+- Byte views of the buffer can be handed directly to the error correction stage
+- Optional preallocation when the final bit length is known up front
+"""
+
+from typing import Iterator
+
+
+class BitBuffer:
+    """
+    Append-only sequence of bits packed MSB-first into a bytearray.
+
+    The first bit appended becomes the most significant bit of byte 0, which is
+    the bit order used for QR codewords.
+    """
+
+    __slots__ = ("_data", "_bit_length")
+
+    def __init__(self, capacity_bits: int = 0) -> None:
+        """
+        Create an empty buffer.
+
+        Args:
+            capacity_bits: Number of bits to preallocate storage for. The buffer
+                still grows on demand if more bits are appended.
+        """
+        self._data = bytearray((capacity_bits + 7) // 8)
+        self._bit_length = 0
+
+    @classmethod
+    def from_bytes(cls, data: bytes) -> "BitBuffer":
+        """
+        Create a buffer holding the bits of the given bytes.
+
+        Args:
+            data: Bytes (or any bytes-like object) to copy into the buffer
+
+        Returns:
+            BitBuffer: Buffer whose length is 8 * len(data) bits
+        """
+        buffer = cls()
+        buffer._data = bytearray(data)
+        buffer._bit_length = len(buffer._data) * 8
+        return buffer
+
+    def __len__(self) -> int:
+        """Return the number of bits stored in the buffer."""
+        return self._bit_length
+
+    def __iter__(self) -> Iterator[int]:
+        """Yield every bit in the buffer as an int (0 or 1)."""
+        data = self._data
+        for index in range(self._bit_length):
+            yield (data[index >> 3] >> (7 - (index & 7))) & 1
+
+    def get_bit(self, index: int) -> int:
+        """
+        Return the bit at the given position.
+
+        Args:
+            index: Bit position, 0 being the first bit appended
+
+        Returns:
+            int: 0 or 1
+
+        Raises:
+            IndexError: If index is outside the buffer
+        """
+        if not 0 <= index < self._bit_length:
+            raise IndexError(f"Bit index {index} out of range for buffer of {self._bit_length} bits.")
+        return (self._data[index >> 3] >> (7 - (index & 7))) & 1
+
+    def _ensure_capacity(self, bit_length: int) -> None:
+        """Grow the backing bytearray so that it can hold bit_length bits."""
+        needed_bytes = (bit_length + 7) // 8
+        if needed_bytes > len(self._data):
+            self._data.extend(bytes(needed_bytes - len(self._data)))
+
+    def append_bits(self, value: int, count: int) -> None:
+        """
+        Append the lowest `count` bits of value, most significant bit first.
+
+        Args:
+            value: Non-negative integer to append
+            count: Number of bits to append
+
+        Raises:
+            ValueError: If count is negative or value does not fit in count bits
+        """
+        if count < 0 or value < 0 or value >> count:
+            raise ValueError(f"Value {value} does not fit in {count} bits.")
+
+        position = self._bit_length
+        self._ensure_capacity(position + count)
+        data = self._data
+
+        # Fill the current partial byte, then whole bytes, then the final partial byte
+        while count > 0:
+            byte_index = position >> 3
+            free_bits = 8 - (position & 7)
+            take = free_bits if free_bits < count else count
+            chunk = (value >> (count - take)) & ((1 << take) - 1)
+            data[byte_index] |= chunk << (free_bits - take)
+            position += take
+            count -= take
+
+        self._bit_length = position
+
+    def append_bytes(self, values: bytes) -> None:
+        """
+        Append whole bytes to the buffer.
+
+        When the buffer is byte aligned the bytes are copied in a single slice
+        assignment; otherwise each byte is split across two buffer bytes with
+        a fixed shift.
+
+        Args:
+            values: Bytes (or any bytes-like object) to append
+        """
+        shift = self._bit_length & 7
+        start = self._bit_length >> 3
+        end = start + len(values)
+        self._ensure_capacity(end * 8 + shift)
+        data = self._data
+        if shift == 0:
+            data[start:end] = values
+        else:
+            carry_shift = 8 - shift
+            index = start
+            for byte in values:
+                data[index] |= byte >> shift
+                index += 1
+                data[index] = (byte << carry_shift) & 0xFF
+        self._bit_length = end * 8 + shift
+
+    def pad_to_byte(self) -> None:
+        """Append zero bits until the buffer length is a multiple of 8."""
+        remainder = self._bit_length & 7
+        if remainder:
+            self.append_bits(0, 8 - remainder)
+
+    def byte_view(self) -> memoryview:
+        """
+        Return a read-only view of the complete bytes in the buffer.
+
+        The view shares memory with the buffer, so no copy is made, and the
+        buffer cannot grow while the view is alive. A trailing partial byte is
+        included with its unused low bits set to 0.
+
+        Returns:
+            memoryview: View over the packed bytes
+        """
+        return memoryview(self._data)[:(self._bit_length + 7) // 8].toreadonly()
+
+    def to_bytes(self) -> bytes:
+        """
+        Return a copy of the packed bytes in the buffer.
+
+        Returns:
+            bytes: The packed bytes (a trailing partial byte is zero padded)
+        """
+        return bytes(self._data[:(self._bit_length + 7) // 8])
@@ -1,19 +1,266 @@
 """
-QR Code Byte Mode Encoder
--------------------------
+QR Code Data Encoder
+--------------------
 
-This program encodes a user-provided URL into a QR code using the Byte Mode encoding scheme,
-following the QR Code standard. The process includes:
+This program encodes user-provided text into QR code data codewords, following the
+QR Code standard. The process includes:
 
 1. Validating the input to ensure it is a well-formed URL.
-2. Encoding the URL into a sequence of 8-bit codewords (Byte Mode).
-3. Generating error correction codewords using Reed-Solomon coding.
-4. Displaying the data codewords, error correction codewords, and the complete codeword sequence.
+2. Splitting the text into Numeric, Alphanumeric, Byte and Kanji Mode segments so that the
+   total bitstream is as short as possible, and selecting the smallest version.
+3. Encoding the segments into a sequence of 8-bit codewords.
+4. Generating error correction codewords using Reed-Solomon coding.
+5. Displaying the data codewords, error correction codewords, and the complete codeword sequence.
 
 Author: Zain Alshammari
 """
 import re
-from error_correction import generate_error_correction  # Changed to use new module
+from bisect import bisect_left
+from typing import BinaryIO, Iterable, Iterator, List, NamedTuple, Optional, Union
+
+from bit_buffer import BitBuffer
+from error_correction import build_final_codewords, generate_error_correction  # Changed to use new module
+from qr_tables import (
+    DATA_CAPACITY_BITS,
+    DATA_CODEWORDS,
+    ECC_CODEWORDS_PER_BLOCK,
+    ECC_LEVELS,
+    MICRO_DATA_CAPACITY_BITS,
+    MICRO_VERSIONS,
+    NUM_ERROR_CORRECTION_BLOCKS,
+    RMQR_DATA_CODEWORDS,
+    RMQR_SIZES,
+)
+
+# Mode indicators (4 bits each)
+MODE_NUMERIC = 0b0001
+MODE_ALPHANUMERIC = 0b0010
+MODE_BYTE = 0b0100
+MODE_ECI = 0b0111
+MODE_STRUCTURED_APPEND = 0b0011
+MODE_KANJI = 0b1000
+
+# Structured Append links at most 16 symbols
+MAX_STRUCTURED_APPEND_SYMBOLS = 16
+
+# ECI designator for UTF-8, used when the text cannot be encoded in ISO-8859-1
+ECI_UTF8 = 26
+
+# Character count indicator widths for Versions 1-9, 10-26 and 27-40
+CHAR_COUNT_BITS = {
+    MODE_NUMERIC: (10, 12, 14),
+    MODE_ALPHANUMERIC: (9, 11, 13),
+    MODE_BYTE: (8, 16, 16),
+    MODE_KANJI: (8, 10, 12),
+}
+
+# Symbol types sharing the segmentation and bit-length helpers
+SYMBOL_QR = 'qr'
+SYMBOL_MICRO = 'micro'
+SYMBOL_RMQR = 'rmqr'
+
+# Micro QR character count indicator widths for M1-M4 (None where the mode is not available)
+MICRO_CHAR_COUNT_BITS = {
+    MODE_NUMERIC: (3, 4, 5, 6),
+    MODE_ALPHANUMERIC: (None, 3, 4, 5),
+    MODE_BYTE: (None, None, 4, 5),
+    MODE_KANJI: (None, None, 3, 4),
+}
+
+# Micro QR mode indicators; M1 has none, M2-M4 use 1, 2 and 3 bits
+MICRO_MODE_INDICATORS = {MODE_NUMERIC: 0, MODE_ALPHANUMERIC: 1, MODE_BYTE: 2, MODE_KANJI: 3}
+
+# Micro QR terminator lengths for M1-M4
+MICRO_TERMINATOR_BITS = (3, 5, 7, 9)
+
+# rMQR character count indicator widths (ISO/IEC 23941 Table 3), indexed by
+# version indicator (R7x43 to R17x139)
+RMQR_CHAR_COUNT_BITS = {
+    MODE_NUMERIC: (4, 5, 6, 7, 7, 5, 6, 7, 7, 8, 4, 6, 7, 7, 8, 8,
+                   5, 6, 7, 7, 8, 8, 7, 7, 8, 8, 9, 7, 8, 8, 8, 9),
+    MODE_ALPHANUMERIC: (3, 5, 5, 6, 6, 5, 5, 6, 6, 7, 4, 5, 6, 6, 7, 7,
+                        5, 6, 6, 7, 7, 8, 6, 7, 7, 7, 8, 6, 7, 7, 8, 8),
+    MODE_BYTE: (3, 4, 5, 5, 6, 4, 5, 5, 6, 6, 3, 5, 5, 6, 6, 7,
+                4, 5, 6, 6, 7, 7, 6, 6, 7, 7, 7, 6, 6, 7, 7, 8),
+    MODE_KANJI: (2, 3, 4, 5, 5, 3, 4, 5, 5, 6, 2, 4, 5, 5, 6, 6,
+                 3, 5, 5, 6, 6, 7, 5, 5, 6, 6, 7, 5, 6, 6, 6, 7),
+}
+
+# rMQR mode indicators are 3 bits; the terminator is 3 zero bits
+RMQR_MODE_INDICATORS = {MODE_NUMERIC: 0b001, MODE_ALPHANUMERIC: 0b010, MODE_BYTE: 0b011, MODE_KANJI: 0b100}
+RMQR_TERMINATOR_BITS = 3
+
+# Versions covered by each character count width
+VERSION_RANGES = ((1, 9), (10, 26), (27, 40))
+
+# The 45 characters of Alphanumeric Mode, in code value order
+ALPHANUMERIC_CHARSET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:"
+ALPHANUMERIC_VALUES = {ord(char): value for value, char in enumerate(ALPHANUMERIC_CHARSET)}
+
+# Shift-JIS lead bytes of the two double-byte ranges Kanji Mode covers (0x8140-0x9FFC and 0xE040-0xEBBF)
+KANJI_LEAD_BYTES = bytes(1 if 0x81 <= byte <= 0x9F or 0xE0 <= byte <= 0xEB else 0 for byte in range(256))
+
+# Pad codewords appended after the terminator until the data capacity is filled
+PAD_BYTES = bytes([0b11101100, 0b00010001])
+
+
+class Segment(NamedTuple):
+    """A run of input encoded in a single mode."""
+    mode: int  # Mode indicator, e.g. MODE_NUMERIC
+    char_count: int  # Value written to the character count indicator (ECI designator for MODE_ECI)
+    data: bytes  # Encoded input bytes of the run (ASCII for Numeric/Alphanumeric, Shift-JIS pairs
+    #              for Kanji, empty for ECI, position/total and parity bytes for Structured Append)
+
+
+class Payload(NamedTuple):
+    """Input text encoded to bytes once, shared by validation, segmentation and version selection."""
+    data: bytes  # ISO-8859-1 bytes, Shift-JIS bytes when kanji is set, or UTF-8 bytes when eci is ECI_UTF8
+    eci: Optional[int]  # ECI designator to emit before the data, or None for the default ISO-8859-1
+    kanji: bool = False  # Data is ASCII plus double-byte Shift-JIS characters that Kanji Mode can encode
+
+
+def prepare_payload(text: str, kanji: bool = True) -> Payload:
+    """Encode text to bytes in a single pass, trying Shift-JIS Kanji before falling back to UTF-8 with an ECI header.
+
+    Shift-JIS is only used when every non-ASCII character is a double-byte
+    character in the Kanji Mode ranges, so the ASCII runs read the same in
+    Byte Mode and no ECI header is needed.
+
+    Args:
+        text (str): The input text.
+        kanji (bool): Allow the Shift-JIS Kanji encoding (False for Byte Mode only output).
+    Returns:
+        Payload: The encoded bytes and the ECI designator they need (if any).
+    """
+    try:
+        return Payload(text.encode('iso-8859-1', errors='strict'), None)
+    except UnicodeEncodeError:
+        pass
+    if kanji:
+        try:
+            data = text.encode('shift_jis', errors='strict')
+            kanji_unit_starts(data)
+            return Payload(data, None, True)
+        except (UnicodeEncodeError, ValueError):
+            pass
+    return Payload(text.encode('utf-8'), ECI_UTF8)
+
+
+def is_kanji_pair(lead: int, trail: int) -> bool:
+    """Return whether two Shift-JIS bytes form a character in the Kanji Mode ranges."""
+    return bool(KANJI_LEAD_BYTES[lead]) and 0x40 <= trail <= 0xFC and (lead != 0xEB or trail <= 0xBF)
+
+
+def kanji_unit_starts(data: bytes) -> List[int]:
+    """Return the offset of every character in ASCII plus Kanji Mode Shift-JIS data.
+    Args:
+        data (bytes): Shift-JIS encoded input.
+    Returns:
+        List[int]: Offsets of the single-byte ASCII and double-byte Kanji characters.
+    Raises:
+        ValueError: If a non-ASCII byte does not start a Kanji Mode character.
+    """
+    starts = []
+    index = 0
+    while index < len(data):
+        starts.append(index)
+        if data[index] < 0x80:
+            index += 1
+        elif index + 1 < len(data) and is_kanji_pair(data[index], data[index + 1]):
+            index += 2
+        else:
+            raise ValueError(f"Byte 0x{data[index]:02X} at offset {index} does not start a Kanji Mode character.")
+    return starts
+
+
+def get_char_count_bits(mode: int, version: int) -> int:
+    """Return the width of the character count indicator for a mode and version.
+    Args:
+        mode (int): Mode indicator (MODE_NUMERIC, MODE_ALPHANUMERIC, MODE_BYTE or MODE_KANJI).
+        version (int): QR code version (1-40).
+    Returns:
+        int: Number of bits in the character count indicator.
+    """
+    return CHAR_COUNT_BITS[mode][0 if version <= 9 else 1 if version <= 26 else 2]
+
+
+def get_byte_mode_count_bits(version: int) -> int:
+    """Return the width of the Byte Mode character count indicator for a version.
+    Args:
+        version (int): QR code version (1-40).
+    Returns:
+        int: 8 bits for Versions 1-9, 16 bits for Versions 10-40.
+    """
+    return get_char_count_bits(MODE_BYTE, version)
+
+
+# Largest Byte Mode payload (in bytes) that fits each version, per EC level.
+# Index 0 is version 1; the tuples are non-decreasing so they can be bisected.
+BYTE_MODE_CAPACITY = {
+    level: tuple((capacity_bits[version] - 4 - get_byte_mode_count_bits(version)) // 8
+                 for version in range(1, 41))
+    for level, capacity_bits in DATA_CAPACITY_BITS.items()
+}
+
+MAX_BYTE_MODE_CAPACITY = BYTE_MODE_CAPACITY['L'][-1]
+
+
+def _check_ecc_level(ecc_level: str) -> None:
+    """Raise ValueError for an unknown error correction level."""
+    if ecc_level not in DATA_CAPACITY_BITS:
+        raise ValueError(f"Unsupported error correction level: {ecc_level}")
+
+
+def select_byte_mode_version(byte_count: int, ecc_level: str = 'L') -> int:
+    """Return the smallest version whose Byte Mode capacity holds byte_count bytes.
+    Args:
+        byte_count (int): Length of the payload in bytes.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+    Returns:
+        int: The selected QR code version (1-40).
+    Raises:
+        ValueError: If the payload does not fit in Version 40.
+    """
+    _check_ecc_level(ecc_level)
+    capacities = BYTE_MODE_CAPACITY[ecc_level]
+    index = bisect_left(capacities, byte_count)
+    if index == len(capacities):
+        raise ValueError(f"Input too long for Version 40 {ecc_level} (max {capacities[-1]} bytes).")
+    return index + 1
+
+
+def select_version(bit_length: int, first_version: int = 1, last_version: int = 40, ecc_level: str = 'L') -> int:
+    """Return the smallest version in a range whose data capacity holds bit_length bits.
+    Args:
+        bit_length (int): Length of the segment bitstream (before terminator and padding).
+        first_version (int): First version to consider.
+        last_version (int): Last version to consider.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+    Returns:
+        int: The selected version, or 0 if no version in the range is large enough.
+    """
+    version = bisect_left(DATA_CAPACITY_BITS[ecc_level], bit_length, first_version, last_version + 1)
+    return version if version <= last_version else 0
+
+
+def upgrade_ecc_level(bit_length: int, version: int, ecc_level: str = 'L') -> str:
+    """Return the highest error correction level at or above ecc_level whose capacity in version holds bit_length.
+
+    A bitstream that needs version at ecc_level fits no smaller version at any
+    higher level, so raising the level never changes the selected version.
+
+    Args:
+        bit_length (int): Length of the segment bitstream (before terminator and padding).
+        version (int): QR code version (1-40) selected at ecc_level.
+        ecc_level (str): Requested (minimum) error correction level.
+    Returns:
+        str: The upgraded level ('L', 'M', 'Q' or 'H').
+    """
+    _check_ecc_level(ecc_level)
+    for level in reversed(ECC_LEVELS[ECC_LEVELS.index(ecc_level) + 1:]):
+        if DATA_CAPACITY_BITS[level][version] >= bit_length:
+            return level
+    return ecc_level
 
 
 def is_valid_url(text: str) -> bool:
@@ -31,63 +278,729 @@ def is_valid_url(text: str) -> bool:
     return bool(pattern.match(text))
 
 
-# Ahmed's code
-def encode_byte_mode(data: str) -> tuple[list[str], int]:
-    """Return list of 8-bit codewords and selected version for QR code in Byte Mode.
+def _segment_header_bits(mode: int, version: int, symbol_type: str = SYMBOL_QR) -> Optional[int]:
+    """Return the mode plus count indicator bits of a segment, or None if the symbol lacks the mode."""
+    if symbol_type == SYMBOL_RMQR:
+        return 3 + RMQR_CHAR_COUNT_BITS[mode][version]
+    if symbol_type == SYMBOL_MICRO:
+        count_bits = MICRO_CHAR_COUNT_BITS[mode][version - 1]
+        return None if count_bits is None else version - 1 + count_bits
+    return 4 + get_char_count_bits(mode, version)
+
+
+def segment_bit_length(segment: Segment, version: int, symbol_type: str = SYMBOL_QR) -> int:
+    """Return the number of bits a segment occupies, including its mode and count indicators.
     Args:
-        data (str): The input data to encode.
+        segment (Segment): The segment to measure.
+        version (int): QR code version (1-40), Micro QR version (1-4) or rMQR version
+                       indicator (0-31), which fixes the count indicator width.
+        symbol_type (str): SYMBOL_QR, SYMBOL_MICRO or SYMBOL_RMQR.
     Returns:
-        tuple[list[str], int]: A tuple containing the list of 8-bit codewords and the selected version.
-    Raises:
-        ValueError: If the input data contains characters is too long.
+        int: Total bits for the segment.
     """
+    count = segment.char_count
+    if segment.mode == MODE_ECI:
+        return 4 + _eci_designator_length(count)
+    if segment.mode == MODE_STRUCTURED_APPEND:
+        return 4 + 16
+    if segment.mode == MODE_NUMERIC:
+        data_bits = 10 * (count // 3) + (0, 4, 7)[count % 3]
+    elif segment.mode == MODE_ALPHANUMERIC:
+        data_bits = 11 * (count // 2) + 6 * (count % 2)
+    elif segment.mode == MODE_KANJI:
+        data_bits = 13 * count
+    else:
+        data_bits = 8 * count
+    return _segment_header_bits(segment.mode, version, symbol_type) + data_bits
 
-    # Encode input data to ISO-8859-1 bytes, raising ValueError for unsupported characters
-    try:
-        data_bytes = data.encode('iso-8859-1', errors='strict')
-    except UnicodeEncodeError:
-        raise ValueError("Data contains characters outside ISO-8859-1.")
-
-    # Version capacity check
-    if len(data_bytes) <= 17:
-        version = 1
-        total_data_codewords = 19
-    elif len(data_bytes) <= 32:
-        version = 2
-        total_data_codewords = 34
+
+def _eci_designator_length(designator: int) -> int:
+    """Return the bit length of an ECI designator (8, 16 or 24 bits depending on its value)."""
+    if designator < 1 << 7:
+        return 8
+    if designator < 1 << 14:
+        return 16
+    return 24
+
+
+def encode_eci(bit_stream: BitBuffer, designator: int) -> None:
+    """Append an ECI designator: 0 + 7 bits, 10 + 14 bits, or 110 + 21 bits.
+    Args:
+        bit_stream (BitBuffer): Buffer to append to.
+        designator (int): ECI assignment number (0-999999).
+    """
+    length = _eci_designator_length(designator)
+    if length == 8:
+        bit_stream.append_bits(designator, 8)
+    elif length == 16:
+        bit_stream.append_bits(0b10 << 14 | designator, 16)
+    else:
+        bit_stream.append_bits(0b110 << 21 | designator, 24)
+
+
+def encode_numeric(bit_stream: BitBuffer, digits: bytes) -> None:
+    """Append digits in Numeric Mode: 10 bits per 3 digits, 7 bits for 2, 4 bits for 1.
+    Args:
+        bit_stream (BitBuffer): Buffer to append to.
+        digits (bytes): ASCII decimal digits.
+    """
+    for i in range(0, len(digits), 3):
+        group = digits[i:i + 3]
+        bit_stream.append_bits(int(group), len(group) * 3 + 1)
+
+
+def encode_alphanumeric(bit_stream: BitBuffer, text: bytes) -> None:
+    """Append text in Alphanumeric Mode: 11 bits per character pair, 6 bits for a final single character.
+    Args:
+        bit_stream (BitBuffer): Buffer to append to.
+        text (bytes): ASCII characters from ALPHANUMERIC_CHARSET.
+    """
+    values = [ALPHANUMERIC_VALUES[byte] for byte in text]
+    for i in range(0, len(values) - 1, 2):
+        bit_stream.append_bits(values[i] * 45 + values[i + 1], 11)
+    if len(values) % 2:
+        bit_stream.append_bits(values[-1], 6)
+
+
+def encode_kanji(bit_stream: BitBuffer, data: bytes) -> None:
+    """Append Shift-JIS characters in Kanji Mode: 13 bits per character.
+
+    0x8140 (0x8140-0x9FFC) or 0xC140 (0xE040-0xEBBF) is subtracted, and the
+    high byte of the result times 0xC0 plus the low byte gives the 13-bit value.
+
+    Args:
+        bit_stream (BitBuffer): Buffer to append to.
+        data (bytes): Double-byte Shift-JIS characters in the Kanji Mode ranges.
+    """
+    for i in range(0, len(data), 2):
+        code = data[i] << 8 | data[i + 1]
+        code -= 0x8140 if code <= 0x9FFC else 0xC140
+        bit_stream.append_bits((code >> 8) * 0xC0 + (code & 0xFF), 13)
+
+
+def _append_segment_data(bit_stream: BitBuffer, segment: Segment) -> None:
+    """Append the data bits of a Numeric, Alphanumeric, Byte or Kanji segment (after its count indicator)."""
+    if segment.mode == MODE_NUMERIC:
+        encode_numeric(bit_stream, segment.data)
+    elif segment.mode == MODE_ALPHANUMERIC:
+        encode_alphanumeric(bit_stream, segment.data)
+    elif segment.mode == MODE_KANJI:
+        encode_kanji(bit_stream, segment.data)
     else:
-        raise ValueError(f"Input too long for Version 2 L (max 32 bytes).")
+        bit_stream.append_bytes(segment.data)
+
+
+# Relative cost of one character in each mode, in sixths of a bit, so that the
+# 10-bits-per-3 Numeric and 11-bits-per-2 Alphanumeric rates stay integral
+_CHAR_COST_SIXTHS = {MODE_NUMERIC: 20, MODE_ALPHANUMERIC: 33, MODE_BYTE: 48}
+_SEGMENT_MODES = (MODE_NUMERIC, MODE_ALPHANUMERIC, MODE_BYTE, MODE_KANJI)
+
+# A double-byte Kanji character costs 13 bits in Kanji Mode or 16 bits in Byte Mode
+_KANJI_UNIT_MODES = (MODE_KANJI, MODE_BYTE)
+_KANJI_UNIT_COSTS = {MODE_KANJI: 78, MODE_BYTE: 96}
+
+# Modes able to encode each byte value. Bytes of multi-byte UTF-8 sequences are
+# all >= 0x80, so they always fall back to Byte Mode.
+_BYTE_MODES = tuple(
+    (MODE_NUMERIC, MODE_ALPHANUMERIC, MODE_BYTE) if 0x30 <= byte <= 0x39
+    else (MODE_ALPHANUMERIC, MODE_BYTE) if byte in ALPHANUMERIC_VALUES
+    else (MODE_BYTE,)
+    for byte in range(256)
+)
+
+
+def segment_data(data: bytes, version: int, symbol_type: str = SYMBOL_QR, kanji: bool = False) -> List[Segment]:
+    """Split encoded input into the mode segments with the fewest total bits for a version range.
+
+    Dynamic programming over the characters keeps, for every mode, the cheapest
+    encoding of the prefix that ends in an open segment of that mode. A segment
+    switch costs the new mode and count indicators, and closing a segment rounds
+    its cost up to whole bits. With kanji set, every non-ASCII byte starts a
+    double-byte Shift-JIS character that is encoded in Kanji or Byte Mode.
+
+    Args:
+        data (bytes): The encoded input (see prepare_payload).
+        version (int): Any version in the range being encoded for (sets the count widths),
+                       or the Micro QR version (1-4) or rMQR version indicator (0-31).
+        symbol_type (str): SYMBOL_QR, SYMBOL_MICRO (fewer modes, shorter headers) or SYMBOL_RMQR.
+        kanji (bool): The data is a Shift-JIS Kanji payload (see prepare_payload).
+    Returns:
+        List[Segment]: Segments that concatenate back to the input.
+    Raises:
+        ValueError: If a character cannot be encoded in any mode the Micro QR version offers,
+                    or kanji is set and the data is not ASCII plus Kanji Mode characters.
+    """
+    header_costs = {}
+    for mode in _SEGMENT_MODES:
+        header_bits = _segment_header_bits(mode, version, symbol_type)
+        if header_bits is not None:
+            header_costs[mode] = header_bits * 6
+
+    if not data:
+        return [Segment(MODE_BYTE if MODE_BYTE in header_costs else MODE_NUMERIC, 0, b'')]
+    starts = kanji_unit_starts(data) if kanji else range(len(data))
+    costs = {}  # Mode -> cost of the prefix ending in an open segment of that mode
+    back_pointers = []  # Per character: mode -> mode of the previous character
 
-    # Build bit stream
-    bit_stream = '0100'  # Byte mode indicator
-    bit_stream += format(len(data_bytes), '08b')  # Character count (8 bits for V1 & V2)
+    for start in starts:
+        byte = data[start]
+        if kanji and byte >= 0x80:
+            unit_modes, unit_costs = _KANJI_UNIT_MODES, _KANJI_UNIT_COSTS
+        else:
+            unit_modes, unit_costs = _BYTE_MODES[byte], _CHAR_COST_SIXTHS
+        # Cheapest way to close the previous segment, rounded up to whole bits
+        closed = {mode: -(-cost // 6) * 6 for mode, cost in costs.items()}
+        new_costs = {}
+        previous_modes = {}
 
-    # Add data bytes
-    for byte in data_bytes:
-        bit_stream += format(byte, '08b') 
+        for mode in unit_modes:
+            if mode not in header_costs:
+                continue  # Mode not available in this Micro QR version
+            best_cost = None
+            best_previous = None
+            if mode in costs:
+                best_cost, best_previous = costs[mode], mode  # Continue the open segment
+            for previous_mode, closed_cost in closed.items():
+                if previous_mode != mode and (best_cost is None or closed_cost + header_costs[mode] < best_cost):
+                    best_cost, best_previous = closed_cost + header_costs[mode], previous_mode
+            if best_cost is None:
+                best_cost = header_costs[mode]  # First byte starts the first segment
 
-    # Calculate total bits needed
+            new_costs[mode] = best_cost + unit_costs[mode]
+            previous_modes[mode] = best_previous
+
+        if not new_costs:
+            raise ValueError(f"Byte 0x{byte:02X} cannot be encoded in Micro QR M{version}.")
+        costs = new_costs
+        back_pointers.append(previous_modes)
+
+    # Trace back the cheapest final mode to get the mode of every character
+    mode = min(costs, key=lambda m: costs[m])
+    unit_count = len(starts)
+    char_modes = [0] * unit_count
+    for index in range(unit_count - 1, -1, -1):
+        char_modes[index] = mode
+        mode = back_pointers[index][mode]
+
+    # Group runs of equal modes into segments; Byte Mode counts bytes, the other modes characters
+    segments = []
+    first = 0
+    for index in range(1, unit_count + 1):
+        if index == unit_count or char_modes[index] != char_modes[first]:
+            begin = starts[first]
+            end = starts[index] if index < unit_count else len(data)
+            mode = char_modes[first]
+            segments.append(Segment(mode, end - begin if mode == MODE_BYTE else index - first, data[begin:end]))
+            first = index
+    return segments
+
+
+def segment_text(text: str, version: int) -> List[Segment]:
+    """Split text into the mode segments with the fewest total bits for a version range.
+    Args:
+        text (str): The input text.
+        version (int): Any version in the range being encoded for (sets the count widths).
+    Returns:
+        List[Segment]: Segments for the text, starting with an ECI segment when UTF-8 is needed.
+    """
+    return _segments_for_payload(prepare_payload(text), version)
+
+
+def _segments_for_payload(payload: Payload, version: int) -> List[Segment]:
+    """Segment a payload's bytes and prepend its ECI segment, if it has one."""
+    segments = segment_data(payload.data, version, kanji=payload.kanji)
+    if payload.eci is not None:
+        segments.insert(0, Segment(MODE_ECI, payload.eci, b''))
+    return segments
+
+
+def encode_segments(segments: List[Segment], version: int, ecc_level: str = 'L') -> BitBuffer:
+    """Encode segments into the padded data codewords of a version.
+    Args:
+        segments (List[Segment]): Segments to encode, in order.
+        version (int): QR code version (1-40).
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+    Returns:
+        BitBuffer: Data codewords filling the full data capacity of the version at that level.
+    Raises:
+        ValueError: If the segments do not fit in the version.
+    """
+    _check_ecc_level(ecc_level)
+    total_data_codewords = DATA_CODEWORDS[ecc_level][version]
+
+    # Calculate total bits needed and preallocate the buffer for them
     total_bits_needed = total_data_codewords * 8
+    if sum(segment_bit_length(segment, version) for segment in segments) > total_bits_needed:
+        raise ValueError(f"Segments do not fit in Version {version} {ecc_level}.")
+    bit_stream = BitBuffer(total_bits_needed)
+
+    for segment in segments:
+        bit_stream.append_bits(segment.mode, 4)  # Mode indicator
+        if segment.mode == MODE_ECI:
+            encode_eci(bit_stream, segment.char_count)
+            continue
+        if segment.mode == MODE_STRUCTURED_APPEND:
+            bit_stream.append_bytes(segment.data)  # Position, total and parity (16 bits)
+            continue
+        bit_stream.append_bits(segment.char_count, get_char_count_bits(segment.mode, version))  # Character count
+        _append_segment_data(bit_stream, segment)
+
+    _append_terminator_and_padding(bit_stream, total_bits_needed)
+    return bit_stream
+
 
+def _append_terminator_and_padding(bit_stream: BitBuffer, total_bits_needed: int) -> None:
+    """Append the terminator, byte alignment and pad bytes up to the data capacity of a QR code."""
     # Add terminator (up to 4 zeros)
     remaining_bits = total_bits_needed - len(bit_stream)
     terminator_bits = min(4, remaining_bits)
-    bit_stream += '0' * terminator_bits
+    bit_stream.append_bits(0, terminator_bits)
 
     # Pad to byte boundary
-    if len(bit_stream) % 8 != 0:
-        bit_stream += '0' * (8 - len(bit_stream) % 8) 
+    bit_stream.pad_to_byte()
+
+    # Add pad bytes (alternating 11101100 and 00010001)
+    pad_count = (total_bits_needed - len(bit_stream)) // 8
+    bit_stream.append_bytes(PAD_BYTES * (pad_count // 2) + PAD_BYTES[:pad_count % 2])
+
+
+def encode_text(text: Union[str, Payload], ecc_level: str = 'L') -> tuple[BitBuffer, int]:
+    """Return data codewords and the smallest version for text, using optimal mixed-mode segments.
+
+    The segmentation depends on the character count widths, so it is computed
+    once per version range (1-9, 10-26, 27-40) until a range fits.
+
+    Args:
+        text (Union[str, Payload]): The input text, or a payload already built by prepare_payload.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+    Returns:
+        tuple[BitBuffer, int]: The packed data codewords and the selected version.
+    Raises:
+        ValueError: If the level is unknown or the input is too long for Version 40.
+    """
+    _check_ecc_level(ecc_level)
+    payload = prepare_payload(text) if isinstance(text, str) else text
+
+    segments, version = _fit_payload(payload, ecc_level)
+    if not version:
+        raise ValueError(f"Input too long for Version 40 {ecc_level} ({len(payload.data)} bytes).")
+    return encode_segments(segments, version, ecc_level), version
+
+
+def encode_text_max_ecc(text: Union[str, Payload], ecc_level: str = 'L') -> tuple[BitBuffer, int, str]:
+    """Return data codewords, version and level for text at the highest level that keeps the smallest version.
+
+    The version is selected at ecc_level as in encode_text, then the spare
+    capacity that would otherwise hold pad bytes is spent on a higher level.
+
+    Args:
+        text (Union[str, Payload]): The input text, or a payload already built by prepare_payload.
+        ecc_level (str): Minimum error correction level ('L', 'M', 'Q' or 'H').
+    Returns:
+        tuple[BitBuffer, int, str]: The packed data codewords, the version and the level used.
+    Raises:
+        ValueError: If the level is unknown or the input is too long for Version 40.
+    """
+    _check_ecc_level(ecc_level)
+    payload = prepare_payload(text) if isinstance(text, str) else text
+
+    segments, version = _fit_payload(payload, ecc_level)
+    if not version:
+        raise ValueError(f"Input too long for Version 40 {ecc_level} ({len(payload.data)} bytes).")
+    level = upgrade_ecc_level(sum(segment_bit_length(segment, version) for segment in segments), version, ecc_level)
+    return encode_segments(segments, version, level), version, level
+
+
+def _fit_payload(payload: Payload, ecc_level: str, max_version: int = 40,
+                 header: tuple = ()) -> tuple[List[Segment], int]:
+    """Segment a payload for each version range in turn and return the first (smallest) fit.
+    Args:
+        payload (Payload): The encoded input.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+        max_version (int): Largest version allowed.
+        header (tuple): Segments to emit before the payload (e.g. Structured Append).
+    Returns:
+        tuple[List[Segment], int]: The segments and selected version, or ([], 0) if nothing fits.
+    """
+    for first_version, last_version in VERSION_RANGES:
+        if first_version > max_version:
+            break
+        segments = list(header) + _segments_for_payload(payload, first_version)
+        bit_length = sum(segment_bit_length(segment, first_version) for segment in segments)
+        version = select_version(bit_length, first_version, min(last_version, max_version), ecc_level)
+        if version:
+            return segments, version
+    return [], 0
+
+
+def _split_points(payload: Payload, parts: int) -> List[int]:
+    """Return parts + 1 offsets dividing data into near-equal, non-empty chunks, never inside a UTF-8 or Kanji character.
+
+    Raises:
+        ValueError: If the data has fewer than parts characters.
+    """
+    data = payload.data
+    if payload.kanji:
+        starts = kanji_unit_starts(data)
+    elif payload.eci is not None:
+        starts = [i for i, byte in enumerate(data) if not 0x80 <= byte < 0xC0]  # Skip UTF-8 continuation bytes
+    else:
+        starts = list(range(len(data)))
+    if len(starts) < parts:
+        raise ValueError(f"Cannot split {len(starts)} characters into {parts} non-empty chunks.")
+
+    points = [0]
+    index = 0  # starts[index] is the last chunk start used
+    for i in range(1, parts):
+        # First character boundary at or after the even split, leaving one character for each later chunk
+        index = min(max(index + 1, bisect_left(starts, len(data) * i // parts)), len(starts) - parts + i)
+        points.append(starts[index])
+    points.append(len(data))
+    return points
+
+
+def encode_structured_append(text: Union[str, Payload], ecc_level: str = 'L',
+                             max_version: int = 40) -> List[tuple[BitBuffer, int]]:
+    """Split text across linked symbols with Structured Append headers.
+
+    The payload is divided into the fewest near-equal chunks (at most 16) that
+    each fit in max_version. Every symbol starts with a Structured Append header
+    holding its position, the symbol count and the parity (XOR of all payload
+    bytes), followed by the ECI header when the payload is UTF-8. A payload
+    that fits in a single symbol is returned as one ordinary symbol.
+
+    Args:
+        text (Union[str, Payload]): The input text, or a payload already built by prepare_payload.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+        max_version (int): Largest version allowed for each symbol (1-40).
+    Returns:
+        List[tuple[BitBuffer, int]]: Data codewords and version of every symbol, in sequence order.
+    Raises:
+        ValueError: If the level or max_version is invalid, or the input needs more than 16 symbols.
+    """
+    _check_ecc_level(ecc_level)
+    if not 1 <= max_version <= 40:
+        raise ValueError(f"Version must be between 1 and 40, got {max_version}")
+    payload = prepare_payload(text) if isinstance(text, str) else text
+
+    segments, version = _fit_payload(payload, ecc_level, max_version)
+    if version:
+        return [(encode_segments(segments, version, ecc_level), version)]
+
+    parity = 0
+    for byte in payload.data:
+        parity ^= byte
+
+    for total in range(2, MAX_STRUCTURED_APPEND_SYMBOLS + 1):
+        try:
+            points = _split_points(payload, total)
+        except ValueError:
+            break  # Every character already has a symbol of its own
+        symbols = []
+        for index in range(total):
+            header = Segment(MODE_STRUCTURED_APPEND, 0, bytes([index << 4 | (total - 1), parity]))
+            part = Payload(payload.data[points[index]:points[index + 1]], payload.eci, payload.kanji)
+            segments, version = _fit_payload(part, ecc_level, max_version, (header,))
+            if not version:
+                break
+            symbols.append((encode_segments(segments, version, ecc_level), version))
+        else:
+            return symbols
+
+    raise ValueError(f"Input too long for {MAX_STRUCTURED_APPEND_SYMBOLS} Version {max_version} "
+                     f"{ecc_level} symbols ({len(payload.data)} bytes).")
+
 
-    # Add pad bytes
-    pad_bytes = ['11101100', '00010001']
-    pad_index = 0
-    while len(bit_stream) < total_bits_needed:
-        bit_stream += pad_bytes[pad_index % 2]
-        pad_index += 1
+def encode_micro_segments(segments: List[Segment], micro_version: int, ecc_level: str = 'L') -> BitBuffer:
+    """Encode segments into the padded data codewords of a Micro QR symbol.
+
+    Micro QR uses shorter mode and count indicators and a longer terminator.
+    In M1 and M3 the final data codeword is only 4 bits; the returned buffer
+    is exactly the data capacity in bits, so to_bytes() yields that codeword in
+    the high nibble of the last byte, as Reed-Solomon encoding expects.
+
+    Args:
+        segments (List[Segment]): Numeric, Alphanumeric, Byte or Kanji segments, in order.
+        micro_version (int): Micro QR version (1-4 for M1-M4).
+        ecc_level (str): Error correction level ('L', 'M' or 'Q').
+    Returns:
+        BitBuffer: Data bits filling the full data capacity of the symbol.
+    Raises:
+        ValueError: If the level is not available for the symbol or the segments do not fit.
+    """
+    capacity_bits = MICRO_DATA_CAPACITY_BITS.get(ecc_level, (None,) * 5)[micro_version]
+    if capacity_bits is None:
+        raise ValueError(f"Error correction level {ecc_level} is not available for Micro QR M{micro_version}.")
+    if sum(segment_bit_length(segment, micro_version, SYMBOL_MICRO) for segment in segments) > capacity_bits:
+        raise ValueError(f"Segments do not fit in Micro QR M{micro_version} {ecc_level}.")
+    bit_stream = BitBuffer(capacity_bits)
+
+    for segment in segments:
+        bit_stream.append_bits(MICRO_MODE_INDICATORS[segment.mode], micro_version - 1)  # Mode indicator
+        bit_stream.append_bits(segment.char_count, MICRO_CHAR_COUNT_BITS[segment.mode][micro_version - 1])
+        _append_segment_data(bit_stream, segment)
+
+    # Add terminator, then zero bits up to the codeword boundary
+    bit_stream.append_bits(0, min(MICRO_TERMINATOR_BITS[micro_version - 1], capacity_bits - len(bit_stream)))
+    bit_stream.append_bits(0, min(-len(bit_stream) % 8, capacity_bits - len(bit_stream)))
+
+    # Pad codewords fill the full 8-bit codewords, a final 4-bit codeword stays zero
+    pad_count = (capacity_bits - len(bit_stream)) // 8
+    bit_stream.append_bytes(PAD_BYTES * (pad_count // 2) + PAD_BYTES[:pad_count % 2])
+    bit_stream.append_bits(0, capacity_bits - len(bit_stream))
+
+    return bit_stream
+
+
+def encode_micro_text(text: Union[str, Payload], ecc_level: str = 'L') -> tuple[BitBuffer, int]:
+    """Return Micro QR data bits and the smallest Micro QR version (M1-M4) for text.
+    Args:
+        text (Union[str, Payload]): The input text, or a payload already built by prepare_payload.
+        ecc_level (str): Error correction level ('L', 'M' or 'Q'; M1 is only used for 'L').
+    Returns:
+        tuple[BitBuffer, int]: The data bits and the Micro QR version (1-4).
+    Raises:
+        ValueError: If the text needs ECI, uses Level H or does not fit in M4.
+    """
+    if ecc_level not in MICRO_DATA_CAPACITY_BITS:
+        raise ValueError(f"Error correction level {ecc_level} is not available for Micro QR.")
+    payload = prepare_payload(text) if isinstance(text, str) else text
+    if payload.eci is not None:
+        raise ValueError("Micro QR does not support ECI; the text must be ISO-8859-1 or Shift-JIS Kanji.")
 
-    # Split into codewords
-    codewords = [bit_stream[i:i + 8] for i in range(0, len(bit_stream), 8)]
-    return codewords[:total_data_codewords], version
+    for micro_version in MICRO_VERSIONS:
+        capacity_bits = MICRO_DATA_CAPACITY_BITS[ecc_level][micro_version]
+        if capacity_bits is None:
+            continue
+        try:
+            segments = segment_data(payload.data, micro_version, SYMBOL_MICRO, payload.kanji)
+        except ValueError:
+            continue  # A character needs a mode this version lacks
+        if sum(segment_bit_length(segment, micro_version, SYMBOL_MICRO) for segment in segments) <= capacity_bits:
+            return encode_micro_segments(segments, micro_version, ecc_level), micro_version
+
+    raise ValueError(f"Input too long for Micro QR M4 {ecc_level} ({len(payload.data)} bytes).")
+
+
+def encode_rmqr_segments(segments: List[Segment], version_indicator: int, ecc_level: str = 'M') -> BitBuffer:
+    """Encode segments into the padded data codewords of an rMQR symbol.
+    Args:
+        segments (List[Segment]): Numeric, Alphanumeric, Byte or Kanji segments, in order.
+        version_indicator (int): rMQR version indicator (0-31, index into RMQR_SIZES).
+        ecc_level (str): Error correction level ('M' or 'H').
+    Returns:
+        BitBuffer: Data codewords filling the full data capacity of the symbol.
+    Raises:
+        ValueError: If the level is not M or H or the segments do not fit.
+    """
+    if ecc_level not in RMQR_DATA_CODEWORDS:
+        raise ValueError(f"Error correction level {ecc_level} is not available for rMQR.")
+    total_bits_needed = RMQR_DATA_CODEWORDS[ecc_level][version_indicator] * 8
+    if sum(segment_bit_length(segment, version_indicator, SYMBOL_RMQR) for segment in segments) > total_bits_needed:
+        height, width = RMQR_SIZES[version_indicator]
+        raise ValueError(f"Segments do not fit in rMQR R{height}x{width} {ecc_level}.")
+    bit_stream = BitBuffer(total_bits_needed)
+
+    for segment in segments:
+        bit_stream.append_bits(RMQR_MODE_INDICATORS[segment.mode], 3)  # Mode indicator
+        bit_stream.append_bits(segment.char_count, RMQR_CHAR_COUNT_BITS[segment.mode][version_indicator])
+        _append_segment_data(bit_stream, segment)
+
+    # Add terminator, pad to a byte boundary, then alternate the pad bytes
+    bit_stream.append_bits(0, min(RMQR_TERMINATOR_BITS, total_bits_needed - len(bit_stream)))
+    bit_stream.pad_to_byte()
+    pad_count = (total_bits_needed - len(bit_stream)) // 8
+    bit_stream.append_bytes(PAD_BYTES * (pad_count // 2) + PAD_BYTES[:pad_count % 2])
+
+    return bit_stream
+
+
+def encode_rmqr_text(text: Union[str, Payload], ecc_level: str = 'M', max_height: int = 17) -> tuple[BitBuffer, int]:
+    """Return data codewords and the smallest rMQR symbol (by module count) for text.
+
+    Symbols taller than max_height are skipped, so narrow label stock can ask
+    for a low, wide symbol; among equal areas the lower symbol wins.
+
+    Args:
+        text (Union[str, Payload]): The input text, or a payload already built by prepare_payload.
+        ecc_level (str): Error correction level ('M' or 'H').
+        max_height (int): Tallest symbol allowed (7-17 modules).
+    Returns:
+        tuple[BitBuffer, int]: The packed data codewords and the rMQR version indicator (0-31).
+    Raises:
+        ValueError: If the text needs ECI, the level is not M or H, or nothing fits.
+    """
+    if ecc_level not in RMQR_DATA_CODEWORDS:
+        raise ValueError(f"Error correction level {ecc_level} is not available for rMQR (use M or H).")
+    payload = prepare_payload(text) if isinstance(text, str) else text
+    if payload.eci is not None:
+        raise ValueError("rMQR output does not support ECI; the text must be ISO-8859-1 or Shift-JIS Kanji.")
+
+    candidates = sorted((height * width, height, index)
+                        for index, (height, width) in enumerate(RMQR_SIZES) if height <= max_height)
+    for _, _, version_indicator in candidates:
+        segments = segment_data(payload.data, version_indicator, SYMBOL_RMQR, payload.kanji)
+        bit_length = sum(segment_bit_length(segment, version_indicator, SYMBOL_RMQR) for segment in segments)
+        if bit_length <= RMQR_DATA_CODEWORDS[ecc_level][version_indicator] * 8:
+            return encode_rmqr_segments(segments, version_indicator, ecc_level), version_indicator
+
+    raise ValueError(f"Input too long for rMQR {ecc_level} up to {max_height} modules high "
+                     f"({len(payload.data)} bytes).")
+
+
+# Ahmed's code
+def encode_byte_mode(data: str, ecc_level: str = 'L') -> tuple[BitBuffer, int]:
+    """Return the data codewords and selected version for QR code in Byte Mode.
+
+    Text outside ISO-8859-1 is encoded as UTF-8 behind an ECI header.
+
+    Args:
+        data (str): The input data to encode.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+    Returns:
+        tuple[BitBuffer, int]: A tuple containing the packed data codewords and the selected version.
+    Raises:
+        ValueError: If the level is unknown or the input data is too long.
+    """
+    payload = prepare_payload(data, kanji=False)
+    return encode_byte_stream(payload.data, ecc_level, len(payload.data), payload.eci)
+
+
+def encode_byte_mode_max_ecc(data: str, ecc_level: str = 'L') -> tuple[BitBuffer, int, str]:
+    """Byte Mode variant of encode_text_max_ecc: the smallest version at ecc_level, then the highest level fitting it.
+    Args:
+        data (str): The input data to encode.
+        ecc_level (str): Minimum error correction level ('L', 'M', 'Q' or 'H').
+    Returns:
+        tuple[BitBuffer, int, str]: The packed data codewords, the version and the level used.
+    Raises:
+        ValueError: If the level is unknown or the input data is too long.
+    """
+    payload = prepare_payload(data, kanji=False)
+    version, bit_length = _select_byte_stream_version(len(payload.data), ecc_level, payload.eci)
+    level = upgrade_ecc_level(bit_length, version, ecc_level)
+    bit_stream, _ = encode_byte_stream(payload.data, level, len(payload.data), payload.eci)
+    return bit_stream, version, level
+
+
+# Read size used when pulling data from a binary file object
+STREAM_CHUNK_SIZE = 4096
+
+ByteSource = Union[bytes, bytearray, memoryview, BinaryIO, Iterable[bytes], Iterable[int]]
+
+
+def _source_length(source: ByteSource) -> Optional[int]:
+    """Return the number of bytes left in a source, or None if it cannot be known without reading it."""
+    if isinstance(source, (bytes, bytearray)):
+        return len(source)
+    if isinstance(source, memoryview):
+        return source.nbytes
+    seekable = getattr(source, 'seekable', None)
+    if seekable is not None and seekable():
+        position = source.tell()
+        end = source.seek(0, 2)
+        source.seek(position)
+        return end - position
+    return None
+
+
+def _iter_chunks(source: ByteSource) -> Iterator[bytes]:
+    """Yield a source as bytes-like chunks without copying buffers that are already in memory."""
+    if isinstance(source, (bytes, bytearray, memoryview)):
+        yield source
+        return
+    read = getattr(source, 'read', None)
+    if read is not None:
+        while True:
+            chunk = read(STREAM_CHUNK_SIZE)
+            if not chunk:
+                return
+            yield chunk
+    else:
+        for chunk in source:
+            yield bytes((chunk,)) if isinstance(chunk, int) else chunk
+
+
+def _select_byte_stream_version(length: int, ecc_level: str, eci: Optional[int]) -> tuple[int, int]:
+    """Return the smallest version for a Byte Mode segment of length bytes (behind an optional ECI) and its bit length.
+    Raises:
+        ValueError: If the data does not fit in Version 40 at ecc_level.
+    """
+    segments = [Segment(MODE_BYTE, length, b'')]
+    if eci is not None:
+        segments.insert(0, Segment(MODE_ECI, eci, b''))
+    version = 0
+    if eci is None and length <= BYTE_MODE_CAPACITY[ecc_level][-1]:
+        version = select_byte_mode_version(length, ecc_level)
+    elif eci is not None:
+        for first_version, last_version in VERSION_RANGES:
+            version = select_version(sum(segment_bit_length(segment, first_version) for segment in segments),
+                                     first_version, last_version, ecc_level)
+            if version:
+                break
+    if not version:
+        raise ValueError(f"Input too long for Version 40 {ecc_level} ({length} bytes).")
+    return version, sum(segment_bit_length(segment, version) for segment in segments)
+
+
+def encode_byte_stream(source: ByteSource, ecc_level: str = 'L', length: Optional[int] = None,
+                       eci: Optional[int] = None) -> tuple[BitBuffer, int]:
+    """Encode bytes from a buffer, binary file object or bytes iterator as a single Byte Mode segment.
+
+    The version is selected from the length before any data is read, and the
+    bytes are written straight into a buffer preallocated to that version's data
+    capacity, so memory stays proportional to the symbol rather than the input.
+    When the length is not given and the source cannot report it (a pipe or a
+    generator), at most one byte more than the largest capacity is buffered.
+
+    Args:
+        source (ByteSource): bytes-like object, binary file object (read()), or iterable of
+                             bytes chunks or ints.
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H').
+        length (Optional[int]): Number of bytes the source provides, if known.
+        eci (Optional[int]): ECI designator to emit before the data (e.g. ECI_UTF8), or None.
+    Returns:
+        tuple[BitBuffer, int]: The packed data codewords and the selected version.
+    Raises:
+        ValueError: If the level is unknown, the data is too long, or the source does not
+                    provide exactly length bytes.
+    """
+    _check_ecc_level(ecc_level)
+    if length is None:
+        length = _source_length(source)
+    if length is None:
+        # Unknown length: read no more than needed to know whether it fits
+        limit = BYTE_MODE_CAPACITY[ecc_level][-1] + 1
+        buffered = bytearray()
+        for chunk in _iter_chunks(source):
+            buffered += chunk[:limit - len(buffered)]
+            if len(buffered) >= limit:
+                break
+        source, length = buffered, len(buffered)
+
+    # Capacity is known from the length alone, before reading any data
+    version, _ = _select_byte_stream_version(length, ecc_level, eci)
+
+    total_bits_needed = DATA_CODEWORDS[ecc_level][version] * 8
+    bit_stream = BitBuffer(total_bits_needed)
+    if eci is not None:
+        bit_stream.append_bits(MODE_ECI, 4)
+        encode_eci(bit_stream, eci)
+    bit_stream.append_bits(MODE_BYTE, 4)
+    bit_stream.append_bits(length, get_char_count_bits(MODE_BYTE, version))
+
+    # Copy the data chunk by chunk into the preallocated buffer
+    written = 0
+    for chunk in _iter_chunks(source):
+        written += len(chunk)
+        if written > length:
+            raise ValueError(f"Source provided more than the declared {length} bytes.")
+        bit_stream.append_bytes(chunk)
+    if written != length:
+        raise ValueError(f"Source provided {written} bytes, expected {length}.")
+
+    _append_terminator_and_padding(bit_stream, total_bits_needed)
+    return bit_stream, version
 
 
 def main():
@@ -101,40 +1014,34 @@ def main():
 
     try:
         # Get the data codewords and version
-        data_codewords_binary, version = encode_byte_mode(user_input_text)  # Modified to capture version
+        data_buffer, version = encode_text(user_input_text)  # Modified to capture version
         print(f"\nUsing QR Version {version}")  # Added version display
 
         # Then generate the error correction codes
-        data_codewords_integers = [int(cw_bin, 2) for cw_bin in data_codewords_binary]
-        ecc_codewords_binary = generate_error_correction(data_codewords_integers, version)  # Added version parameter
+        data_codewords = data_buffer.to_bytes()
+        ecc_codewords = generate_error_correction(data_codewords, version)  # Added version parameter
 
     except ValueError as e:
         print(f"Error: {e}")
         return
  
-    # Define codeword counts based on QR code version
-    # Version 1: 19 data codewords, 7 error correction codewords
-    # Version 2+: 34 data codewords, 10 error correction codewords
-    if version == 1:
-        data_count = 19
-        ecc_count = 7
-    else:
-        data_count = 34
-        ecc_count = 10
+    # Look up codeword counts for the QR code version
+    data_count = DATA_CODEWORDS['L'][version]
+    ecc_count = ECC_CODEWORDS_PER_BLOCK['L'][version] * NUM_ERROR_CORRECTION_BLOCKS['L'][version]
 
     # Show results
     print(f"\nData codewords ({data_count}):")
-    for i, cw_bin in enumerate(data_codewords_binary[:data_count], start=1):  # Added slicing for safety
-        print(f"{i:2d}: {cw_bin} (0x{int(cw_bin, 2):02X})")
+    for i, cw in enumerate(data_codewords[:data_count], start=1):  # Added slicing for safety
+        print(f"{i:2d}: {cw:08b} (0x{cw:02X})")
 
     print(f"\nError correction codewords ({ecc_count}):")
-    for i, cw_bin in enumerate(ecc_codewords_binary, start=1):
-        print(f"{i:2d}: {cw_bin} (0x{int(cw_bin, 2):02X})")
+    for i, cw in enumerate(ecc_codewords, start=1):
+        print(f"{i:2d}: {cw:08b} (0x{cw:02X})")
 
-    print(f"\nAll codewords ({data_count + ecc_count} total):")
-    all_codewords_binary = data_codewords_binary[:data_count] + ecc_codewords_binary  # Added slicing here as well
-    for i, cw_bin in enumerate(all_codewords_binary, start=1):
-        print(f"{i:2d}: {cw_bin} (0x{int(cw_bin, 2):02X})")
+    print(f"\nAll codewords ({data_count + ecc_count} total, in interleaved placement order):")
+    all_codewords = build_final_codewords(data_codewords, version)
+    for i, cw in enumerate(all_codewords, start=1):
+        print(f"{i:2d}: {cw:08b} (0x{cw:02X})")
 
 
 if __name__ == "__main__":
@@ -2,66 +2,720 @@
 QR Code Error Correction Module
 
 This module handles error correction for QR codes using Reed-Solomon coding,
-supporting both Version 1 and Version 2 QR codes at ECC Level L.
+supporting QR code Versions 1 to 40 at ECC Levels L, M, Q and H.
 
-For Version 1:
-- 19 data codewords
-- 7 error correction codewords
-- 26 total codewords
+The data codewords are split into blocks as specified in ISO/IEC 18004:2015
+Table 9, error correction codewords are generated for each block separately,
+and the blocks are interleaved codeword by codeword for placement.
 
-For Version 2:
-- 34 data codewords
-- 10 error correction codewords
-- 44 total codewords
+For example:
+- Version 1-L: 1 block of 19 data codewords + 7 ECC codewords (26 total)
+- Version 2-L: 1 block of 34 data codewords + 10 ECC codewords (44 total)
+- Version 5-Q: 2 blocks of 15 and 2 blocks of 16 data codewords, + 18 ECC codewords each (134 total)
+- Micro QR M1-M4: a single block, where M1 and M3 end in a 4-bit data codeword
+- rMQR R7x43 to R17x139: Levels M and H, blocks interleaved as for QR codes
+
+Reed-Solomon encoding is done in-project over GF(256) with the QR field
+polynomial x^8 + x^4 + x^3 + x^2 + 1, using log/antilog tables. The generator
+polynomial for each error correction codeword count is built once, together
+with a table of its multiples, so encoding a block is one lookup and XOR per
+data codeword.
+
+For bulk jobs, reed_solomon_batch and build_final_codewords_batch encode an
+N x k matrix of messages with one vectorised table lookup per codeword column
+when numpy is installed (it is optional; without it they loop per block).
+Both paths return a list of bytes, one entry per message.
+
+Reed-Solomon encoding is linear, so update_error_correction patches an
+existing symbol's ECC for a few changed data codewords using the cached ECC
+contribution of each block position, in O(changes x ECC) time.
+
+decode_reed_solomon corrects a received block (syndromes, Berlekamp-Massey,
+Chien search and Forney), and correct_final_codewords reverses the block
+interleaving of a read-back symbol so generated symbols can be verified.
 
 Author: Zain Alshammari
 """
 
-from reedsolo import RSCodec
-from typing import List  # Import List for type hinting
+from bisect import bisect_right
+from typing import Dict, Iterable, List, Sequence, Tuple
+
+try:
+    import numpy as np
+except ImportError:  # numpy is optional, only the batch API uses it
+    np = None
+
+from bit_buffer import BitBuffer
+from qr_tables import (
+    BLOCK_GROUPS,
+    DATA_CODEWORDS,
+    ECC_CODEWORDS_PER_BLOCK,
+    ECC_LEVELS,
+    MICRO_DATA_CAPACITY_BITS,
+    MICRO_ECC_CODEWORDS,
+    RMQR_BLOCK_GROUPS,
+    RMQR_DATA_CODEWORDS,
+    RMQR_ECC_CODEWORDS_PER_BLOCK,
+)
 
 
-def generate_error_correction(data_codeword_integers: List[int], version: int) -> List[str]:
+def split_into_blocks(data_codewords: bytes, version: int, ecc_level: str = 'L') -> List[bytes]:
     """
-    Adds error correction to the QR code data for either Version 1 or Version 2.
+    Split the data codewords into the error correction blocks of a version.
 
     Args:
-        data_codeword_integers (List[int]): List of integers representing data codewords.
-        version (int): QR code version (1 or 2)
+        data_codewords (bytes): Packed data codewords for the whole symbol.
+        version (int): QR code version (1-40)
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H')
 
     Returns:
-        List[str]: List of binary strings representing error correction codewords.
+        List[bytes]: Data codewords of each block, in block order.
 
     Raises:
-        ValueError: If an unsupported version is provided.
-    """
-    # Determine error correction parameters based on version
-    if version == 1:
-        ecc_count = 7  # Number of ECC codewords for V1-L
-    elif version == 2:
-        ecc_count = 10  # Number of ECC codewords for V2-L
-    else:
+        ValueError: If an unsupported version or level is provided or the codeword count is wrong.
+    """
+    if not 1 <= version <= 40:
         raise ValueError(f"Unsupported QR version for error correction: {version}")
+    if ecc_level not in ECC_LEVELS:
+        raise ValueError(f"Unsupported error correction level: {ecc_level}")
+
+    expected_count = DATA_CODEWORDS[ecc_level][version]
+    if len(data_codewords) != expected_count:
+        raise ValueError(f"Version {version}-{ecc_level} needs {expected_count} data codewords, "
+                         f"got {len(data_codewords)}.")
+
+    blocks = []
+    offset = 0
+    for block_count, block_length in BLOCK_GROUPS[ecc_level][version]:
+        for _ in range(block_count):
+            blocks.append(bytes(data_codewords[offset:offset + block_length]))
+            offset += block_length
+    return blocks
+
+
+def interleave_blocks(blocks: List[bytes]) -> bytes:
+    """
+    Interleave blocks codeword by codeword.
+
+    Codeword i of every block is emitted before codeword i + 1 of any block.
+    Shorter blocks are simply skipped once they run out of codewords.
+
+    Args:
+        blocks (List[bytes]): Blocks to interleave
+
+    Returns:
+        bytes: The interleaved codeword sequence
+    """
+    if len(blocks) == 1:
+        return bytes(blocks[0])
+
+    interleaved = bytearray()
+    longest = max(len(block) for block in blocks)
+    for i in range(longest):
+        for block in blocks:
+            if i < len(block):
+                interleaved.append(block[i])
+    return bytes(interleaved)
+
+
+# GF(256) antilog (exponent) and log tables for the primitive polynomial 0x11D.
+# GF_EXP is doubled so that GF_EXP[log_a + log_b] needs no modulo 255.
+GF_PRIMITIVE = 0x11D
+GF_EXP = bytearray(512)
+GF_LOG = [0] * 256
+_value = 1
+for _power in range(255):
+    GF_EXP[_power] = _value
+    GF_LOG[_value] = _power
+    _value <<= 1
+    if _value & 0x100:
+        _value ^= GF_PRIMITIVE
+GF_EXP[255:510] = GF_EXP[:255]
+del _value, _power
+
+
+def gf_multiply(a: int, b: int) -> int:
+    """Multiply two elements of GF(256)."""
+    if a == 0 or b == 0:
+        return 0
+    return GF_EXP[GF_LOG[a] + GF_LOG[b]]
+
+
+def gf_divide(a: int, b: int) -> int:
+    """Divide a by a non-zero element b of GF(256)."""
+    if b == 0:
+        raise ZeroDivisionError("Division by zero in GF(256).")
+    if a == 0:
+        return 0
+    return GF_EXP[GF_LOG[a] + 255 - GF_LOG[b]]
+
+
+def _gf_poly_eval(coefficients: List[int], x: int) -> int:
+    """Evaluate a polynomial given lowest degree first at x (Horner's rule)."""
+    value = 0
+    for coefficient in reversed(coefficients):
+        value = gf_multiply(value, x) ^ coefficient
+    return value
+
+
+# Generator polynomials and their multiplication tables, built once per ECC codeword count
+_GENERATOR_POLYNOMIALS: Dict[int, bytes] = {}
+_GENERATOR_TABLES: Dict[int, List[int]] = {}
+
+
+def reed_solomon_generator(ecc_count: int) -> bytes:
+    """
+    Return the generator polynomial (x - a^0)(x - a^1)...(x - a^(ecc_count-1)).
+
+    Args:
+        ecc_count (int): Number of error correction codewords (the polynomial degree)
+
+    Returns:
+        bytes: Coefficients from x^(ecc_count-1) down to x^0; the leading 1 is omitted.
+    """
+    generator = _GENERATOR_POLYNOMIALS.get(ecc_count)
+    if generator is None:
+        coefficients = [1]
+        for power in range(ecc_count):
+            root = GF_EXP[power]
+            # Multiply by (x + a^power); subtraction is XOR in GF(256)
+            coefficients = [coefficient ^ gf_multiply(previous, root) for coefficient, previous
+                            in zip(coefficients + [0], [0] + coefficients)]
+        generator = bytes(coefficients[1:])
+        _GENERATOR_POLYNOMIALS[ecc_count] = generator
+    return generator
+
+
+def _generator_table(ecc_count: int) -> List[int]:
+    """Return factor * generator for every factor 0-255, each packed big-endian into an int."""
+    table = _GENERATOR_TABLES.get(ecc_count)
+    if table is None:
+        generator = reed_solomon_generator(ecc_count)
+        table = [0] + [int.from_bytes(bytes(gf_multiply(factor, coefficient) for coefficient in generator), 'big')
+                       for factor in range(1, 256)]
+        _GENERATOR_TABLES[ecc_count] = table
+    return table
+
+
+def _reed_solomon_ecc(block: bytes, ecc_count: int) -> bytes:
+    """
+    Compute the Reed-Solomon error correction codewords of one block.
+
+    The remainder of the block times x^ecc_count divided by the generator is
+    kept in a single integer register, so each data codeword costs one table
+    lookup, a shift and an XOR.
+
+    Args:
+        block (bytes): Data codewords of the block
+        ecc_count (int): Number of error correction codewords to generate
+
+    Returns:
+        bytes: The error correction codewords
+    """
+    table = _generator_table(ecc_count)
+    top_shift = 8 * (ecc_count - 1)
+    register_mask = (1 << 8 * ecc_count) - 1
+    remainder = 0
+    for byte in block:
+        remainder = ((remainder << 8) & register_mask) ^ table[byte ^ (remainder >> top_shift)]
+    return remainder.to_bytes(ecc_count, 'big')
+
+
+def _interleave_with_ecc(blocks: List[bytes], ecc_count: int) -> bytes:
+    """Return the interleaved data codewords followed by the interleaved ECC codewords of the blocks.
+
+    All blocks of a symbol have the same ECC length, so the ECC of block i is
+    written straight into every len(blocks)-th byte of the output.
+    """
+    data_length = sum(len(block) for block in blocks)
+    final = bytearray(data_length + ecc_count * len(blocks))
+    final[:data_length] = interleave_blocks(blocks)
+    for index, block in enumerate(blocks):
+        final[data_length + index::len(blocks)] = _reed_solomon_ecc(block, ecc_count)
+    return bytes(final)
+
+
+def generate_error_correction(data_codewords: bytes, version: int, ecc_level: str = 'L') -> bytes:
+    """
+    Adds error correction to the QR code data for the given version.
+
+    The data is split into blocks, each block gets its own error correction
+    codewords (sized to that block), and the error correction blocks are interleaved.
+
+    Args:
+        data_codewords (bytes): Packed data codewords (any bytes-like object, e.g. a BitBuffer byte view).
+        version (int): QR code version (1-40)
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H')
+
+    Returns:
+        bytes: The interleaved error correction codewords of all blocks.
+
+    Raises:
+        ValueError: If an unsupported version or level is provided.
+    """
+    blocks = split_into_blocks(data_codewords, version, ecc_level)
+    ecc_count = ECC_CODEWORDS_PER_BLOCK[ecc_level][version]
+    ecc = bytearray(ecc_count * len(blocks))
+    for index, block in enumerate(blocks):
+        ecc[index::len(blocks)] = _reed_solomon_ecc(block, ecc_count)
+    return bytes(ecc)
+
+
+# ECC of a single 1 at each block position, per ECC codeword count: entry j is x^(ecc_count + j) mod the
+# generator, i.e. the contribution of the data codeword j places before the end of its block
+_POSITION_REMAINDERS: Dict[int, List[bytes]] = {}
 
-    # Change binary strings to numbers  (already integers here)
-    # data_codeword_integers is already a list of integers
-    # No need to convert from binary strings in this implementation.
 
-    # Set up Reed-Solomon with appropriate error-correction codewords
-    rs = RSCodec(ecc_count)  # Use ecc_count derived above
+def _position_remainders(ecc_count: int, block_length: int) -> List[bytes]:
+    """Return the cached per-position ECC contributions, extended to cover block_length positions."""
+    rows = _POSITION_REMAINDERS.setdefault(ecc_count, [])
+    if len(rows) < block_length:
+        table = _generator_table(ecc_count)
+        top_shift = 8 * (ecc_count - 1)
+        register_mask = (1 << 8 * ecc_count) - 1
+        remainder = int.from_bytes(rows[-1], 'big') if rows else None
+        while len(rows) < block_length:
+            if remainder is None:
+                remainder = table[1]  # x^ecc_count mod the generator
+            else:
+                remainder = ((remainder << 8) & register_mask) ^ table[remainder >> top_shift]  # times x
+            rows.append(remainder.to_bytes(ecc_count, 'big'))
+    return rows
+
+
+def update_block_ecc(ecc: bytes, block_length: int, changes: Iterable[Tuple[int, int, int]]) -> bytes:
+    """
+    Update the error correction codewords of one block for changed data codewords.
+
+    The ECC of a block is the XOR of each data codeword times the ECC of a 1 at
+    its position, so a change only adds (old XOR new) times that position's
+    contribution.
+
+    Args:
+        ecc (bytes): Current error correction codewords of the block
+        block_length (int): Number of data codewords in the block
+        changes (Iterable[Tuple[int, int, int]]): (position in the block, old value, new value) triples
 
-    # reedsolo.encode expects a sequence of integer “bytes”
-    try:
-        full_message_integers = rs.encode(data_codeword_integers)
-    except Exception as e:
-        print(f"Error during reedsolo.encode: {e}")
-        print(f"Data passed to reedsolo: {data_codeword_integers}")
-        raise
+    Returns:
+        bytes: The updated error correction codewords
+
+    Raises:
+        ValueError: If a position is outside the block.
+    """
+    updated = bytearray(ecc)
+    rows = _position_remainders(len(ecc), block_length)
+    for position, old_value, new_value in changes:
+        if not 0 <= position < block_length:
+            raise ValueError(f"Position {position} is outside a block of {block_length} data codewords.")
+        delta = old_value ^ new_value
+        if not delta:
+            continue
+        log_delta = GF_LOG[delta]
+        for i, coefficient in enumerate(rows[block_length - 1 - position]):
+            if coefficient:
+                updated[i] ^= GF_EXP[log_delta + GF_LOG[coefficient]]
+    return bytes(updated)
+
+
+def update_error_correction(ecc: bytes, changes: Iterable[Tuple[int, int, int]], version: int,
+                            ecc_level: str = 'L') -> bytes:
+    """
+    Update a symbol's interleaved error correction codewords for changed data codewords.
+
+    Args:
+        ecc (bytes): Interleaved error correction codewords, as returned by generate_error_correction
+        changes (Iterable[Tuple[int, int, int]]): (data codeword index, old value, new value) triples,
+                                                 indexed in the symbol's data codeword order
+        version (int): QR code version (1-40)
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H')
+
+    Returns:
+        bytes: The updated interleaved error correction codewords.
+
+    Raises:
+        ValueError: If the version, level, ECC length or a position is invalid.
+    """
+    if not 1 <= version <= 40 or ecc_level not in ECC_LEVELS:
+        raise ValueError(f"Unsupported QR version or error correction level: {version}-{ecc_level}")
+    block_lengths = [length for count, length in BLOCK_GROUPS[ecc_level][version] for _ in range(count)]
+    block_count = len(block_lengths)
+    ecc_count = ECC_CODEWORDS_PER_BLOCK[ecc_level][version]
+    if len(ecc) != ecc_count * block_count:
+        raise ValueError(f"Version {version}-{ecc_level} has {ecc_count * block_count} ECC codewords, got {len(ecc)}.")
+
+    block_starts = []
+    offset = 0
+    for length in block_lengths:
+        block_starts.append(offset)
+        offset += length
+
+    block_changes: Dict[int, List[Tuple[int, int, int]]] = {}
+    for position, old_value, new_value in changes:
+        if not 0 <= position < offset:
+            raise ValueError(f"Data codeword index {position} is outside Version {version}-{ecc_level}.")
+        block = bisect_right(block_starts, position) - 1
+        block_changes.setdefault(block, []).append((position - block_starts[block], old_value, new_value))
+
+    updated = bytearray(ecc)
+    for block, block_change_list in block_changes.items():
+        updated[block::block_count] = update_block_ecc(ecc[block::block_count], block_lengths[block],
+                                                       block_change_list)
+    return bytes(updated)
+
+
+def build_final_codewords(data_codewords: bytes, version: int, ecc_level: str = 'L') -> bytes:
+    """
+    Build the complete codeword sequence that is placed in the matrix.
+
+    The sequence is the interleaved data codewords followed by the interleaved
+    error correction codewords.
+
+    Args:
+        data_codewords (bytes): Packed data codewords for the whole symbol.
+        version (int): QR code version (1-40)
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H')
 
-    # The last N values are our error-correction bytes (N = ecc_count)
-    ecc_byte_integers = full_message_integers[-ecc_count:]
+    Returns:
+        bytes: Final interleaved data and error correction codewords.
+    """
+    blocks = split_into_blocks(data_codewords, version, ecc_level)
+    return _interleave_with_ecc(blocks, ECC_CODEWORDS_PER_BLOCK[ecc_level][version])
+
+
+# Generator multiplication tables as (256, ecc_count) uint8 arrays for the batch encoder
+_GENERATOR_MATRICES: Dict[int, "np.ndarray"] = {}
+
+# Source index of every codeword in the interleaved data sequence, per (version, ecc_level)
+_INTERLEAVE_ORDERS: Dict[Tuple[int, str], List[int]] = {}
+
+
+def _generator_matrix(ecc_count: int) -> "np.ndarray":
+    """Return factor * generator for every factor 0-255 as rows of a uint8 array."""
+    matrix = _GENERATOR_MATRICES.get(ecc_count)
+    if matrix is None:
+        matrix = np.array([list(value.to_bytes(ecc_count, 'big')) for value in _generator_table(ecc_count)],
+                          dtype=np.uint8)
+        _GENERATOR_MATRICES[ecc_count] = matrix
+    return matrix
+
+
+def _as_codeword_matrix(rows) -> "np.ndarray":
+    """Return rows of codewords (a uint8 array or a sequence of equal-length bytes) as an N x k uint8 array."""
+    if isinstance(rows, np.ndarray):
+        return rows.astype(np.uint8, copy=False)
+    rows = [bytes(row) for row in rows]
+    if len({len(row) for row in rows}) > 1:
+        raise ValueError("Batch rows must all have the same number of codewords.")
+    return np.frombuffer(b''.join(rows), dtype=np.uint8).reshape(len(rows), len(rows[0]) if rows else 0)
+
+
+def _reed_solomon_batch_array(data: "np.ndarray", ecc_count: int) -> "np.ndarray":
+    """Return the N x ecc_count error correction codewords of an N x k uint8 array of blocks."""
+    table = _generator_matrix(ecc_count)
+    remainder = np.zeros((data.shape[0], ecc_count), dtype=np.uint8)
+    for column in range(data.shape[1]):
+        factor = data[:, column] ^ remainder[:, 0]
+        remainder[:, :-1] = remainder[:, 1:]
+        remainder[:, -1] = 0
+        remainder ^= table[factor]
+    return remainder
+
+
+def reed_solomon_batch(blocks, ecc_count: int) -> List[bytes]:
+    """
+    Compute the error correction codewords of many equal-length blocks at once.
+
+    With numpy the remainder registers of all N blocks advance together: each
+    data column costs one XOR, one shift and one gather from the generator
+    table, independent of N. Leading zero codewords do not change the
+    remainder, so shorter blocks can be left-padded with zeros to share a batch.
+
+    Args:
+        blocks: N x k data codewords (numpy uint8 array, or a sequence of bytes of equal length)
+        ecc_count (int): Number of error correction codewords per block
+
+    Returns:
+        List[bytes]: The ecc_count error correction codewords of each block, with or without numpy.
+    """
+    if np is None:
+        return [_reed_solomon_ecc(bytes(block), ecc_count) for block in blocks]
+    return [row.tobytes() for row in _reed_solomon_batch_array(_as_codeword_matrix(blocks), ecc_count)]
+
+
+def _interleave_order(version: int, ecc_level: str) -> List[int]:
+    """Return the data codeword index placed at each position of the interleaved data sequence."""
+    key = (version, ecc_level)
+    order = _INTERLEAVE_ORDERS.get(key)
+    if order is None:
+        starts = []
+        offset = 0
+        for block_count, block_length in BLOCK_GROUPS[ecc_level][version]:
+            for _ in range(block_count):
+                starts.append((offset, block_length))
+                offset += block_length
+        order = []
+        for i in range(max(length for _, length in starts)):
+            order.extend(start + i for start, length in starts if i < length)
+        _INTERLEAVE_ORDERS[key] = order
+    return order
+
+
+def _syndromes(codewords: bytes, ecc_count: int) -> List[int]:
+    """Return S_j = c(a^j) for j = 0..ecc_count-1, with the first codeword as the highest power."""
+    syndromes = []
+    for power in range(ecc_count):
+        value = 0
+        for byte in codewords:
+            value = (GF_EXP[GF_LOG[value] + power] if value else 0) ^ byte
+        syndromes.append(value)
+    return syndromes
+
+
+def _berlekamp_massey(syndromes: List[int]) -> List[int]:
+    """Return the shortest error locator polynomial (lowest degree first) generating the syndromes."""
+    locator = [1]
+    previous = [1]
+    errors = 0
+    shift = 1
+    previous_discrepancy = 1
+    for n, syndrome in enumerate(syndromes):
+        discrepancy = syndrome
+        for i in range(1, errors + 1):
+            discrepancy ^= gf_multiply(locator[i], syndromes[n - i])
+        if discrepancy == 0:
+            shift += 1
+            continue
+        scale = gf_divide(discrepancy, previous_discrepancy)
+        updated = locator + [0] * max(0, len(previous) + shift - len(locator))
+        for i, coefficient in enumerate(previous):
+            updated[i + shift] ^= gf_multiply(scale, coefficient)
+        if 2 * errors <= n:
+            previous, previous_discrepancy = locator, discrepancy
+            errors = n + 1 - errors
+            shift = 1
+        else:
+            shift += 1
+        locator = updated
+    return locator[:errors + 1]
+
+
+def decode_reed_solomon(codewords: bytes, ecc_count: int) -> Tuple[bytes, int]:
+    """
+    Correct a received Reed-Solomon block and return its data codewords.
+
+    Up to ecc_count // 2 wrong codewords are located with Berlekamp-Massey and
+    a Chien search, and their values are fixed with Forney's formula. A clean
+    block is recognised by re-encoding its data, which is much cheaper than
+    computing the syndromes.
+
+    Args:
+        codewords (bytes): Data codewords followed by ecc_count error correction codewords
+        ecc_count (int): Number of error correction codewords in the block
+
+    Returns:
+        Tuple[bytes, int]: The corrected data codewords and the number of corrected codewords.
+
+    Raises:
+        ValueError: If the block has more errors than can be corrected.
+    """
+    length = len(codewords)
+    if _reed_solomon_ecc(codewords[:length - ecc_count], ecc_count) == bytes(codewords[length - ecc_count:]):
+        return bytes(codewords[:length - ecc_count]), 0
+
+    syndromes = _syndromes(codewords, ecc_count)
+    locator = _berlekamp_massey(syndromes)
+    error_count = len(locator) - 1
+    if error_count == 0 or 2 * error_count > ecc_count:
+        raise ValueError(f"Reed-Solomon block has too many errors to correct ({ecc_count} ECC codewords).")
+
+    # Chien search: a root at a^-i marks an error in the codeword of power i
+    powers = [power for power in range(length) if _gf_poly_eval(locator, GF_EXP[(255 - power) % 255]) == 0]
+    if len(powers) != error_count:
+        raise ValueError("Reed-Solomon error locator has roots outside the block; block is uncorrectable.")
+
+    # Forney: e = X * omega(X^-1) / locator'(X^-1) for first consecutive root a^0
+    omega = [0] * ecc_count
+    for i, syndrome in enumerate(syndromes):
+        for j, coefficient in enumerate(locator[:ecc_count - i]):
+            omega[i + j] ^= gf_multiply(syndrome, coefficient)
+    derivative = [locator[i] if i % 2 else 0 for i in range(1, len(locator))]
+
+    corrected = bytearray(codewords)
+    for power in powers:
+        x_inverse = GF_EXP[(255 - power) % 255]
+        denominator = _gf_poly_eval(derivative, x_inverse)
+        if denominator == 0:
+            raise ValueError("Reed-Solomon error value cannot be computed; block is uncorrectable.")
+        magnitude = gf_multiply(GF_EXP[power], gf_divide(_gf_poly_eval(omega, x_inverse), denominator))
+        corrected[length - 1 - power] ^= magnitude
+
+    if any(_syndromes(corrected, ecc_count)):
+        raise ValueError("Reed-Solomon correction failed; block is uncorrectable.")
+    return bytes(corrected[:length - ecc_count]), error_count
+
+
+def correct_final_codewords(final_codewords: bytes, version: int, ecc_level: str = 'L') -> Tuple[bytes, int]:
+    """
+    Reverse build_final_codewords: de-interleave the blocks and correct each one.
+
+    Args:
+        final_codewords (bytes): Interleaved data and error correction codewords read from a symbol
+        version (int): QR code version (1-40)
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H')
+
+    Returns:
+        Tuple[bytes, int]: The corrected data codewords in order and the number of corrected codewords.
+
+    Raises:
+        ValueError: If the codeword count is wrong or a block cannot be corrected.
+    """
+    if ecc_level not in ECC_LEVELS or not 1 <= version <= 40:
+        raise ValueError(f"Unsupported QR version or error correction level: {version}-{ecc_level}")
+    data_count = DATA_CODEWORDS[ecc_level][version]
+    ecc_count = ECC_CODEWORDS_PER_BLOCK[ecc_level][version]
+    block_lengths = [length for count, length in BLOCK_GROUPS[ecc_level][version] for _ in range(count)]
+    block_count = len(block_lengths)
+    if len(final_codewords) != data_count + ecc_count * block_count:
+        raise ValueError(f"Version {version}-{ecc_level} has {data_count + ecc_count * block_count} codewords, "
+                         f"got {len(final_codewords)}.")
+
+    data = bytearray(data_count)
+    for position, index in enumerate(_interleave_order(version, ecc_level)):
+        data[index] = final_codewords[position]
+
+    corrected_data = bytearray()
+    corrected_total = 0
+    offset = 0
+    for block, length in enumerate(block_lengths):
+        ecc = final_codewords[data_count + block::block_count]
+        block_data, corrected = decode_reed_solomon(bytes(data[offset:offset + length]) + ecc, ecc_count)
+        corrected_data += block_data
+        corrected_total += corrected
+        offset += length
+    return bytes(corrected_data), corrected_total
+
+
+def build_final_codewords_batch(messages: Sequence[bytes], version: int, ecc_level: str = 'L') -> List[bytes]:
+    """
+    Build the final codeword sequences of many symbols of the same version and level.
+
+    Every block of every symbol is encoded in a single batched Reed-Solomon pass:
+    the blocks are stacked into one (N * blocks) x longest-block matrix, with
+    the short blocks left-padded by a zero codeword.
+
+    Args:
+        messages: N x data codewords (numpy uint8 array, or a sequence of bytes)
+        version (int): QR code version (1-40)
+        ecc_level (str): Error correction level ('L', 'M', 'Q' or 'H')
+
+    Returns:
+        List[bytes]: The final codewords of each message, as build_final_codewords returns them.
+
+    Raises:
+        ValueError: If an unsupported version or level is provided or a message has the wrong length.
+    """
+    if np is None:
+        return [build_final_codewords(message, version, ecc_level) for message in messages]
+
+    if not 1 <= version <= 40:
+        raise ValueError(f"Unsupported QR version for error correction: {version}")
+    if ecc_level not in ECC_LEVELS:
+        raise ValueError(f"Unsupported error correction level: {ecc_level}")
+    data = _as_codeword_matrix(messages)
+    data_count = DATA_CODEWORDS[ecc_level][version]
+    if data.ndim != 2 or data.shape[1] != data_count:
+        raise ValueError(f"Version {version}-{ecc_level} needs {data_count} data codewords per message, "
+                         f"got shape {data.shape}.")
+
+    symbol_count = data.shape[0]
+    groups = BLOCK_GROUPS[ecc_level][version]
+    block_count = sum(count for count, _ in groups)
+    longest = max(length for _, length in groups)
+    ecc_count = ECC_CODEWORDS_PER_BLOCK[ecc_level][version]
+
+    # Stack all blocks of all symbols, right-aligned, into one matrix
+    stacked = np.zeros((symbol_count, block_count, longest), dtype=np.uint8)
+    offset = 0
+    block = 0
+    for count, length in groups:
+        stacked[:, block:block + count, longest - length:] = \
+            data[:, offset:offset + count * length].reshape(symbol_count, count, length)
+        offset += count * length
+        block += count
+    ecc = _reed_solomon_batch_array(stacked.reshape(symbol_count * block_count, longest), ecc_count)
+
+    final = np.empty((symbol_count, data_count + ecc_count * block_count), dtype=np.uint8)
+    final[:, :data_count] = data[:, _interleave_order(version, ecc_level)]
+    # ECC codeword i of every block precedes codeword i + 1 of any block
+    final[:, data_count:] = ecc.reshape(symbol_count, block_count, ecc_count).transpose(0, 2, 1).reshape(
+        symbol_count, ecc_count * block_count)
+    return [row.tobytes() for row in final]
+
+
+def build_micro_final_bits(data_bits: BitBuffer, micro_version: int, ecc_level: str = 'L') -> BitBuffer:
+    """
+    Build the complete bit sequence that is placed in a Micro QR symbol.
+
+    Micro QR symbols have a single block, so nothing is interleaved. The 4-bit
+    final data codeword of M1 and M3 enters the Reed-Solomon division as a byte
+    with four zero low bits, but only its four high bits are placed.
+
+    Args:
+        data_bits (BitBuffer): Data bits filling the symbol's data capacity (see encode_micro_segments).
+        micro_version (int): Micro QR version (1-4 for M1-M4)
+        ecc_level (str): Error correction level ('L', 'M' or 'Q')
+
+    Returns:
+        BitBuffer: Data bits followed by the error correction codewords.
+
+    Raises:
+        ValueError: If the level is not available for the symbol or the bit count is wrong.
+    """
+    capacity_bits = MICRO_DATA_CAPACITY_BITS.get(ecc_level, (None,) * 5)[micro_version]
+    if capacity_bits is None:
+        raise ValueError(f"Unsupported Micro QR symbol: M{micro_version}-{ecc_level}")
+    if len(data_bits) != capacity_bits:
+        raise ValueError(f"Micro QR M{micro_version}-{ecc_level} needs {capacity_bits} data bits, "
+                         f"got {len(data_bits)}.")
+
+    data_codewords = data_bits.to_bytes()
+    ecc = _reed_solomon_ecc(data_codewords, MICRO_ECC_CODEWORDS[ecc_level][micro_version])
+
+    final_bits = BitBuffer(capacity_bits + len(ecc) * 8)
+    final_bits.append_bytes(data_codewords[:capacity_bits // 8])
+    if capacity_bits % 8:
+        final_bits.append_bits(data_codewords[-1] >> 4, 4)  # 4-bit final data codeword
+    final_bits.append_bytes(ecc)
+    return final_bits
+
+
+def build_rmqr_final_codewords(data_codewords: bytes, version_indicator: int, ecc_level: str = 'M') -> bytes:
+    """
+    Build the complete codeword sequence that is placed in an rMQR symbol.
+
+    Args:
+        data_codewords (bytes): Packed data codewords for the whole symbol.
+        version_indicator (int): rMQR version indicator (0-31)
+        ecc_level (str): Error correction level ('M' or 'H')
+
+    Returns:
+        bytes: Final interleaved data and error correction codewords.
+
+    Raises:
+        ValueError: If an unsupported level is provided or the codeword count is wrong.
+    """
+    if ecc_level not in RMQR_DATA_CODEWORDS:
+        raise ValueError(f"Unsupported rMQR error correction level: {ecc_level}")
+    expected_count = RMQR_DATA_CODEWORDS[ecc_level][version_indicator]
+    if len(data_codewords) != expected_count:
+        raise ValueError(f"rMQR symbol {version_indicator}-{ecc_level} needs {expected_count} data codewords, "
+                         f"got {len(data_codewords)}.")
 
-    # Convert error-correction bytes back to 8-bit binary strings
-    ecc_binary_strings = [format(b, '08b') for b in ecc_byte_integers]
+    blocks = []
+    offset = 0
+    for block_count, block_length in RMQR_BLOCK_GROUPS[ecc_level][version_indicator]:
+        for _ in range(block_count):
+            blocks.append(bytes(data_codewords[offset:offset + block_length]))
+            offset += block_length
 
-    return ecc_binary_strings
+    return _interleave_with_ecc(blocks, RMQR_ECC_CODEWORDS_PER_BLOCK[ecc_level][version_indicator])
@@ -3,7 +3,7 @@ QR Code Matrix Layout Module
 
 Author: Zain Alshammari
 
-This module implements QR Code module placement for Version 1 and 2 QR codes.
+This module implements QR Code module placement for Version 1 to 40 QR codes.
 It handles the creation and population of QR code matrices with all required
 patterns and data placement according to ISO/IEC 18004:2015 specifications.
 
@@ -11,16 +11,28 @@ Key Features:
 - Finder patterns, separators, and timing patterns placement
 - Dark module and reserved areas for format/version information
 - Alignment patterns for Version 2 and above
-- Zigzag placement algorithm for data and ECC bits
-- Support for both Version 1 (21x21) and Version 2 (25x25) matrices
+- BCH-encoded version information blocks for Version 7 and above
+- Precomputed format and version words with their coordinates, placed by table scatter
+- Zigzag placement order for data and ECC bits, precomputed per version, and its reverse for reading codewords back
+- Symbols are built as compact SymbolMatrix grids; the list-of-rows QRMatrix is only used while placing patterns
+- Support for all matrix sizes from Version 1 (21x21) to Version 40 (177x177)
+- Immutable per-version templates of the function patterns and function map, built once and copied per symbol
+- Micro QR M1 (11x11) to M4 (17x17): single finder pattern, edge timing patterns
+- Rectangular Micro QR (rMQR) R7x43 to R17x139: finder, sub-finder, corner and
+  alignment patterns with fixed masking
 
 """
 
-from typing import List, Union
+from typing import Callable, Dict, List, NamedTuple, Optional, Sequence, Tuple, Union
+
+from bit_buffer import BitBuffer
+from qr_tables import REMAINDER_BITS, RMQR_SIZES, TOTAL_CODEWORDS
+from symbol_matrix import SymbolMatrix
 
 # Type aliases for better code readability
-QRMatrix = List[List[Union[int, str, None]]]  # Matrix that can hold 0, 1, 'R' (reserved), or None
-FinalQRMatrix = List[List[int]]  # Matrix with only 0s and 1s
+QRMatrix = List[List[Union[int, str, None]]]  # Pattern-building matrix: 0, 1, 'R' (reserved), or None
+FinalQRMatrix = Union[SymbolMatrix, List[List[int]]]  # Matrix with only 0s and 1s
+FunctionMap = Sequence[Sequence[bool]]  # True = function pattern module, False = data/ECC module
 
 # Constants based on Thonky's Error Correction Table for Level L
 # Total codewords (data + ECC) for Error Correction Level L
@@ -61,6 +73,32 @@ FORMAT_INFO_COORDINATES_PRIMARY = [
     (7, 8), (5, 8), (4, 8), (3, 8), (2, 8), (1, 8), (0, 8)  # Bits 8-14 (vertical)
 ]
 
+# 2-bit error correction level indicators used in the format information
+ECC_LEVEL_INDICATORS = {'L': '01', 'M': '00', 'Q': '11', 'H': '10'}
+
+# Micro QR format information bit coordinates (15 bits, single copy)
+# Order matches bit order of format string (bits[0] to bits[14])
+MICRO_FORMAT_INFO_COORDINATES = [
+    (8, 1), (8, 2), (8, 3), (8, 4), (8, 5), (8, 6), (8, 7), (8, 8),  # Bits 0-7 (horizontal)
+    (7, 8), (6, 8), (5, 8), (4, 8), (3, 8), (2, 8), (1, 8)  # Bits 8-14 (vertical)
+]
+
+# XOR mask applied to Micro QR format information (differs from the QR mask)
+MICRO_FORMAT_XOR_MASK = 0b100010001000101
+
+# rMQR alignment pattern centre columns for each symbol width (ISO/IEC 23941 Table 2)
+RMQR_ALIGNMENT_COLUMNS = {
+    27: [], 43: [21], 59: [19, 39], 77: [25, 51], 99: [23, 49, 75], 139: [27, 55, 83, 111],
+}
+
+# rMQR format information: 1-bit EC level (M=0, H=1) and the 5-bit version indicator,
+# BCH (18, 6) encoded, with a different XOR mask for the copy next to each finder
+RMQR_ECC_LEVEL_INDICATORS = {'M': '0', 'H': '1'}
+RMQR_FORMAT_XOR_MASKS = (0b011111101010110010, 0b100000101001111011)
+
+# Generator polynomial for version information (x^12 + x^11 + x^10 + x^9 + x^8 + x^5 + x^2 + 1)
+VERSION_INFO_GENERATOR_POLY = "1111100100101"
+
 
 def _bch_poly_divide(message_poly_str: str, generator_poly_str: str, ecc_len: int) -> str:
     """
@@ -96,15 +134,15 @@ def _bch_poly_divide(message_poly_str: str, generator_poly_str: str, ecc_len: in
     return remainder_bits
 
 
-def get_format_string(ecc_level_indicator_str: str, mask_pattern_indicator_str: str) -> str:
+def _compute_format_string(ecc_level_indicator_str: str, mask_pattern_indicator_str: str) -> str:
     """
-    Generate the 15-bit format string for QR code format information.
+    Compute the 15-bit format string for QR code format information (used to build FORMAT_INFO_STRINGS).
 
     The format string contains error correction level and mask pattern information,
     protected by BCH error correction and XOR masking to ensure it's never all zeros.
 
     Args:
-        ecc_level_indicator_str: 2-bit string for ECC level ('01' for Level L)
+        ecc_level_indicator_str: 2-bit string for ECC level (see ECC_LEVEL_INDICATORS, e.g. '01' for Level L)
         mask_pattern_indicator_str: 3-bit string for mask pattern (e.g., '000' for pattern 0)
 
     Returns:
@@ -132,6 +170,55 @@ def get_format_string(ecc_level_indicator_str: str, mask_pattern_indicator_str:
     return format(final_format_val, '015b')
 
 
+def get_format_string(ecc_level_indicator_str: str, mask_pattern_indicator_str: str) -> str:
+    """
+    Return the 15-bit format string for QR code format information from the precomputed table.
+
+    Args:
+        ecc_level_indicator_str: 2-bit string for ECC level (see ECC_LEVEL_INDICATORS, e.g. '01' for Level L)
+        mask_pattern_indicator_str: 3-bit string for mask pattern (e.g., '000' for pattern 0)
+
+    Returns:
+        str: 15-bit format string ready to be placed in the QR code
+    """
+    return _FORMAT_STRINGS_BY_DATA[ecc_level_indicator_str + mask_pattern_indicator_str]
+
+
+def _compute_micro_format_string(symbol_number: int, mask_pattern_id: int) -> str:
+    """
+    Compute the 15-bit format string for Micro QR format information.
+
+    The 5 data bits are the 3-bit symbol number (which encodes both the M1-M4
+    version and the EC level, see qr_tables.MICRO_SYMBOL_NUMBERS) followed by
+    the 2-bit Micro QR mask pattern. The BCH code is the same as for QR codes,
+    only the final XOR mask differs.
+
+    Args:
+        symbol_number: Micro QR symbol number (0-7)
+        mask_pattern_id: Micro QR mask pattern (0-3)
+
+    Returns:
+        str: 15-bit format string ready to be placed in the Micro QR symbol
+    """
+    data_5bit_str = format(symbol_number, '03b') + format(mask_pattern_id, '02b')
+    ecc_10bit_str = _bch_poly_divide(data_5bit_str + '0' * 10, "10100110111", 10)
+    return format(int(data_5bit_str + ecc_10bit_str, 2) ^ MICRO_FORMAT_XOR_MASK, '015b')
+
+
+def get_micro_format_string(symbol_number: int, mask_pattern_id: int) -> str:
+    """
+    Return the 15-bit Micro QR format string from the precomputed table.
+
+    Args:
+        symbol_number: Micro QR symbol number (0-7)
+        mask_pattern_id: Micro QR mask pattern (0-3)
+
+    Returns:
+        str: 15-bit format string ready to be placed in the Micro QR symbol
+    """
+    return MICRO_FORMAT_INFO_STRINGS[(symbol_number, mask_pattern_id)]
+
+
 def create_matrix(size: int) -> QRMatrix:
     """
     Create an empty QR code matrix of the specified size.
@@ -217,6 +304,18 @@ def add_separators(matrix: QRMatrix, size: int) -> None:
         matrix[size - 1 - i][7] = 0  # Vertical separator
 
 
+def add_micro_separator(matrix: QRMatrix) -> None:
+    """
+    Add the white separator below and to the right of the single Micro QR finder pattern.
+
+    Args:
+        matrix: The Micro QR matrix to modify
+    """
+    for i in range(8):
+        matrix[i][7] = 0  # Vertical separator
+        matrix[7][i] = 0  # Horizontal separator
+
+
 def place_alignment_pattern(matrix: QRMatrix, center_r: int, center_c: int) -> None:
     """
     Place a single 5x5 alignment pattern at the specified centre position.
@@ -325,6 +424,23 @@ def place_timing_patterns(matrix: QRMatrix, size: int) -> None:
             matrix[i][6] = val
 
 
+def place_micro_timing_patterns(matrix: QRMatrix, size: int) -> None:
+    """
+    Place the Micro QR timing patterns along the top row and left column.
+
+    Unlike QR codes, Micro QR timing patterns run along the symbol edges from
+    the separator to the opposite side, starting dark at the finder pattern.
+
+    Args:
+        matrix: The Micro QR matrix to modify
+        size: The dimension of the Micro QR symbol
+    """
+    for i in range(8, size):
+        val = 1 if i % 2 == 0 else 0
+        matrix[0][i] = val  # Horizontal timing pattern (row 0)
+        matrix[i][0] = val  # Vertical timing pattern (column 0)
+
+
 def reserve_format_info_areas(matrix: QRMatrix, size: int) -> None:
     """
     Reserve areas for format information by marking them with 'R'.
@@ -352,6 +468,17 @@ def reserve_format_info_areas(matrix: QRMatrix, size: int) -> None:
             matrix[size - 1 - j_val][8] = 'R'
 
 
+def reserve_micro_format_info_area(matrix: QRMatrix) -> None:
+    """
+    Reserve the single Micro QR format information area by marking it with 'R'.
+
+    Args:
+        matrix: The Micro QR matrix to modify
+    """
+    for r_coord, c_coord in MICRO_FORMAT_INFO_COORDINATES:
+        matrix[r_coord][c_coord] = 'R'
+
+
 def place_dark_module(matrix: QRMatrix, size: int) -> None:
     """
     Ensure the dark module position is properly reserved.
@@ -373,81 +500,250 @@ def place_dark_module(matrix: QRMatrix, size: int) -> None:
             matrix[dark_module_row][dark_module_col] = 'R'
 
 
-def place_data_bits(matrix: QRMatrix, size: int, data_bits_str: str) -> None:
+def _compute_version_info_string(version: int) -> str:
     """
-    Place data and error correction bits using the QR code zigzag pattern.
+    Compute the 18-bit version information string for Version 7 and above.
 
-    This function implements the specific zigzag placement algorithm that QR codes
-    use to distribute data throughout the matrix, avoiding reserved areas.
+    The 6-bit version number is protected by a (18, 6) BCH code so that the
+    version can be read reliably from large symbols.
+
+    Args:
+        version: QR code version (7-40)
+
+    Returns:
+        str: 18-bit version information string, most significant bit first
+    """
+    version_6bit_str = format(version, '06b')
+    ecc_12bit_str = _bch_poly_divide(version_6bit_str + '0' * 12, VERSION_INFO_GENERATOR_POLY, 12)
+    return version_6bit_str + ecc_12bit_str
+
+
+def get_version_info_string(version: int) -> str:
+    """
+    Return the 18-bit version information string for Version 7 and above from the precomputed table.
+
+    Args:
+        version: QR code version (7-40)
+
+    Returns:
+        str: 18-bit version information string, most significant bit first
+    """
+    return VERSION_INFO_STRINGS[version]
+
+
+def get_version_info_coordinates(size: int) -> List[tuple]:
+    """
+    Get the coordinates of both version information blocks.
+
+    Each block is 6x3 modules: one above the bottom-left finder pattern and one
+    to the left of the top-right finder pattern (its transpose).
 
     Args:
-        matrix: The QR matrix to modify
         size: The dimension of the QR code
-        data_bits_str: Binary string containing all data and ECC bits to place
+
+    Returns:
+        List[tuple]: (bottom-left (r, c), top-right (r, c)) pairs, least significant
+                     version bit first (i.e. reverse order of the version string)
+    """
+    coordinates = []
+    for i in range(18):
+        r_coord = size - 11 + i % 3
+        c_coord = i // 3
+        coordinates.append(((r_coord, c_coord), (c_coord, r_coord)))
+    return coordinates
+
+
+def place_version_information(matrix: QRMatrix, version: int) -> None:
+    """
+    Place both copies of the version information for Version 7 and above.
+
+    Version information does not depend on the mask pattern, so it is written
+    together with the other function patterns.
+
+    Args:
+        matrix: The QR matrix to modify
+        version: The QR code version (1-40)
+    """
+    if version < 7:
+        return  # Versions 1-6 carry no version information
+
+    for (r, c), bit in zip(VERSION_INFO_POSITIONS[version], VERSION_INFO_BITS[version]):
+        matrix[r][c] = bit
+
+
+def place_data_bits(matrix: SymbolMatrix, size: int, data_bits: BitBuffer, timing_col: Optional[int] = 6,
+                    right_col: Optional[int] = None) -> None:
+    """
+    Place data and error correction bits using the QR code zigzag pattern.
+
+    The modules outside the function bitmap are ordered by get_data_module_order
+    and the bits scattered into them. QR symbols skip the ordering step by using
+    the order stored in their version template (see generate_qr_module). The
+    matrix may be rectangular (rMQR); the column pairs then sweep its full height.
+
+    Args:
+        matrix: The symbol to modify, holding its function patterns
+        size: The width of the matrix (the dimension of square symbols)
+        data_bits: Bit buffer containing all data and ECC bits to place
+        timing_col: Column of the vertical timing pattern, skipped by the column pairs
+                    (6 for QR codes, 0 for Micro QR, None for rMQR)
+        right_col: Right column of the first pair (the right edge when None, size - 2 for rMQR)
+    """
+    function_bits = matrix.function_bits
+    function_map = [function_bits[start:start + size] for start in range(0, len(function_bits), size)]
+    order = [r * size + c for r, c in get_data_module_order(function_map, timing_col, right_col)]
+    scatter_data_bits(matrix, order, data_bits)
+
+
+def scatter_data_bits(matrix: SymbolMatrix, order: Sequence[int], data_bits: BitBuffer) -> None:
+    """
+    Write data bits into the data modules in the given order.
+
+    Modules left over after the last bit (remainder bits not in the buffer) are set to 0.
+
+    Args:
+        matrix: The symbol to modify
+        order: Row-major indices of the data modules in zigzag order
+        data_bits: Bit buffer containing all data and ECC bits to place
+    """
+    cells = matrix.cells
+    for index, bit in zip(order, data_bits):
+        cells[index] = bit
+    for index in order[len(data_bits):]:
+        cells[index] = 0
+
+
+def get_data_module_order(function_map: FunctionMap, timing_col: Optional[int] = 6,
+                          right_col: Optional[int] = None) -> List[Tuple[int, int]]:
     """
-    bit_idx = 0
-    row, col = size - 1, size - 1  # Start at bottom-right
-    direction = -1  # -1 for upward, 1 for downward
+    Return the (row, column) of every data module in the order place_data_bits fills them.
+
+    The first pair runs upward. rMQR symbols have function patterns along both
+    vertical edges and no timing column to skip, so their pairs start one
+    column in from the right edge and end with columns 1 and 0.
 
-    # Process columns from right to left, two at a time
+    Args:
+        function_map: Matrix where True marks a function pattern module
+        timing_col: Column of the vertical timing pattern, skipped by the column pairs (None for rMQR)
+        right_col: Right column of the first pair (the right edge when None)
+
+    Returns:
+        List[Tuple[int, int]]: Coordinates of the non-function modules in zigzag order
+    """
+    height = len(function_map)
+    width = len(function_map[0])
+    order = []
+    upward = True
+    col = width - 1 if right_col is None else right_col
     while col >= 0:
-        # Skip the vertical timing column
-        if col == 6:
+        if col == timing_col:
             col -= 1
             continue
+        rows = range(height - 1, -1, -1) if upward else range(height)
+        for row in rows:
+            for current_c in (col, col - 1):
+                if current_c >= 0 and not function_map[row][current_c]:
+                    order.append((row, current_c))
+        upward = not upward
+        col -= 2
+    return order
+
+
+def read_codewords(matrix: FinalQRMatrix, function_map: FunctionMap, codeword_count: int,
+                   mask_condition: Optional[Callable[[int, int], bool]] = None, timing_col: Optional[int] = 6,
+                   order: Optional[Sequence[int]] = None, right_col: Optional[int] = None) -> bytes:
+    """
+    Read the placed codewords back out of a finished matrix.
 
-        current_path_col = col
-
-        # Process all rows in current column pair
-        for _ in range(size):
-            # Process both columns in the pair (right then left)
-            for c_offset in range(2):
-                current_c = current_path_col - c_offset
-
-                # Only place bit if cell is empty
-                if 0 <= current_c < size and matrix[row][current_c] is None:
-                    # Place data bit or 0 if we've run out of data
-                    if bit_idx < len(data_bits_str):
-                        matrix[row][current_c] = int(data_bits_str[bit_idx])
-                        bit_idx += 1
-                    else:
-                        matrix[row][current_c] = 0
-
-            # Move to next row
-            row += direction
-
-            # If we've hit the edge, reverse direction and move to next column pair
-            if not (0 <= row < size):
-                direction *= -1
-                row += direction
-                col -= 2
-                break
-
-        # Exit if we've processed all columns
-        if col < 0:
-            break
+    This reverses masking and place_data_bits: the data modules are visited in
+    zigzag order, each one is XORed with the mask condition, and the bits are
+    packed into codewords. Remainder bits after the last codeword are ignored.
 
-    # Fill any remaining empty cells with 0 (shouldn't happen with correct data)
-    for r_idx in range(size):
-        for c_idx in range(size):
-            if matrix[r_idx][c_idx] is None:
-                matrix[r_idx][c_idx] = 0
+    Args:
+        matrix: Final matrix of 0s and 1s
+        function_map: Matrix where True marks a function pattern module
+        codeword_count: Number of 8-bit codewords to read
+        mask_condition: Mask pattern condition (r, c) -> bool that was applied, or None
+        timing_col: Column of the vertical timing pattern (6 for QR codes, None for rMQR)
+        order: Precomputed row-major data module indices, e.g. from the version template;
+               derived from function_map when None
+        right_col: Right column of the first pair (the right edge when None, width - 2 for rMQR)
 
+    Returns:
+        bytes: The codewords in placement order
 
-def generate_qr_module(final_bitstream: str, version: int) -> QRMatrix:
+    Raises:
+        ValueError: If the matrix has fewer data modules than codeword_count needs
     """
-    Generate a complete QR code matrix with all patterns and data placed.
+    width = len(function_map[0])
+    if isinstance(matrix, SymbolMatrix):
+        modules = matrix.modules()
+    else:
+        modules = bytes(cell for row in matrix for cell in row)
+    if order is None:
+        order = [r * width + c for r, c in get_data_module_order(function_map, timing_col, right_col)]
+    if len(order) < codeword_count * 8:
+        raise ValueError(f"Matrix holds {len(order)} data modules, {codeword_count * 8} needed.")
+
+    codewords = bytearray(codeword_count)
+    for index in range(codeword_count):
+        value = 0
+        for module in order[index * 8:index * 8 + 8]:
+            bit = modules[module]
+            if mask_condition is not None and mask_condition(*divmod(module, width)):
+                bit ^= 1
+            value = value << 1 | bit
+        codewords[index] = value
+    return bytes(codewords)
+
+
+def read_format_information(matrix: FinalQRMatrix) -> Tuple[str, int]:
+    """
+    Decode the error correction level and mask pattern from a finished QR matrix.
 
-    This is the main function that orchestrates the creation of a QR code matrix
-    by calling all the necessary placement functions in the correct order.
+    Both copies of the format information are compared with the 32 valid format
+    strings; the closest one within 3 bit errors (the BCH code's limit) wins.
 
     Args:
-        final_bitstream: Complete binary string containing all data, ECC, and remainder bits
-        version: The QR code version (1 or 2 supported)
+        matrix: Final matrix of 0s and 1s
 
     Returns:
-        QRMatrix: Complete matrix with all patterns and data placed
+        Tuple[str, int]: Error correction level ('L', 'M', 'Q' or 'H') and mask pattern (0-7)
+
+    Raises:
+        ValueError: If neither copy is within 3 bits of a valid format string
     """
+    size = len(matrix)
+    primary = ''.join(str(matrix[r][c]) for r, c in FORMAT_INFO_COORDINATES_PRIMARY)
+    secondary = ''.join([str(matrix[size - 1 - i][8]) for i in range(7)]
+                        + [str(matrix[8][size - 15 + i]) for i in range(7, 15)])
+
+    best = None
+    for (level, mask), fmt in FORMAT_INFO_STRINGS.items():
+        distance = min(sum(a != b for a, b in zip(fmt, copy)) for copy in (primary, secondary))
+        if best is None or distance < best[0]:
+            best = (distance, level, mask)
+    if best[0] > 3:
+        raise ValueError("Format information is unreadable (more than 3 bit errors in both copies).")
+    return best[1], best[2]
+
+
+class SymbolTemplate(NamedTuple):
+    """Function patterns of one QR version, shared by every symbol of that version."""
+    size: int  # Matrix dimension
+    modules: bytes  # Row-major SymbolMatrix states: patterns, RESERVED format areas, EMPTY data modules
+    function_bits: bytes  # Row-major function bitmap (1 = function pattern)
+    function_map: Tuple[Tuple[bool, ...], ...]  # The same bitmap as rows of booleans
+    data_module_count: int  # Modules left for data, ECC and remainder bits
+    data_module_order: Tuple[int, ...]  # Row-major index of each data module in zigzag order
+
+
+# Templates built so far, keyed by version (see get_qr_template)
+_QR_TEMPLATES: Dict[int, SymbolTemplate] = {}
+
+
+def _build_qr_template(version: int) -> SymbolTemplate:
+    """Place every function pattern of a version into a fresh matrix and freeze it as a template."""
     size = get_size_from_version(version)
     matrix = create_matrix(size)
 
@@ -461,69 +757,348 @@ def generate_qr_module(final_bitstream: str, version: int) -> QRMatrix:
     place_timing_patterns(matrix, size)
     reserve_format_info_areas(matrix, size)  # Mark format areas with 'R'
     place_dark_module(matrix, size)  # Ensure dark module is reserved
+    place_version_information(matrix, version)  # Version 7+ only
+
+    symbol = SymbolMatrix.from_rows(matrix)
+    function_map = tuple(tuple(cell is not None for cell in row) for row in matrix)
+    data_module_order = tuple(r * size + c for r, c in get_data_module_order(function_map))
+    return SymbolTemplate(size, bytes(symbol.cells), symbol.function_bits, function_map,
+                          len(data_module_order), data_module_order)
+
+
+def get_qr_template(version: int) -> SymbolTemplate:
+    """
+    Return the cached function-pattern template of a QR version, building it on first use.
+
+    The template is immutable: callers copy its modules into a SymbolMatrix before placing data.
 
-    # Place all data bits using zigzag pattern
-    place_data_bits(matrix, size, final_bitstream)
+    Args:
+        version: The QR code version (1-40)
+
+    Returns:
+        SymbolTemplate: Base matrix, function map, data module count and zigzag order of the version
+
+    Raises:
+        ValueError: If version is not between 1 and 40
+    """
+    template = _QR_TEMPLATES.get(version)
+    if template is None:
+        template = _build_qr_template(version)
+        _QR_TEMPLATES[version] = template
+    return template
+
+
+def generate_qr_module(final_bitstream: BitBuffer, version: int) -> SymbolMatrix:
+    """
+    Generate a complete QR code matrix with all patterns and data placed.
+
+    The function patterns and the zigzag order of the data modules come from the
+    cached template of the version (see get_qr_template), so placing a symbol
+    is a copy of the template followed by a scatter of the bits.
+
+    Args:
+        final_bitstream: Bit buffer containing all data, ECC, and remainder bits
+        version: The QR code version (1-40)
+
+    Returns:
+        SymbolMatrix: Complete matrix with all patterns and data placed, format areas RESERVED
+    """
+    template = get_qr_template(version)
+    matrix = SymbolMatrix(template.size, template.size, template.modules, template.function_bits)
+
+    # Place all data bits in the precomputed zigzag order
+    scatter_data_bits(matrix, template.data_module_order, final_bitstream)
 
     return matrix
 
 
-def place_format_information(matrix: FinalQRMatrix, fmt: str, size: int) -> FinalQRMatrix:
+def generate_micro_qr_module(final_bitstream: BitBuffer, micro_version: int) -> SymbolMatrix:
+    """
+    Generate a complete Micro QR matrix with all patterns and data placed.
+
+    Args:
+        final_bitstream: Bit buffer containing all data and ECC bits (see build_micro_final_bits)
+        micro_version: The Micro QR version (1-4 for M1-M4)
+
+    Returns:
+        SymbolMatrix: Complete matrix with the format area RESERVED
     """
-    Place format information bits in all three required locations.
+    size = get_micro_size(micro_version)
+    matrix = create_matrix(size)
+
+    place_finder_pattern(matrix, 0, 0)  # Single finder pattern, top-left
+    add_micro_separator(matrix)
+    place_micro_timing_patterns(matrix, size)
+    reserve_micro_format_info_area(matrix)
+
+    # Column pairs run from the right edge to column 1; column 0 holds the timing pattern
+    symbol = SymbolMatrix.from_rows(matrix)
+    place_data_bits(symbol, size, final_bitstream, timing_col=0)
 
-    Format information is placed in three copies around the QR code to ensure
-    it can be read even if parts of the code are damaged.
+    return symbol
+
+
+def add_rmqr_separator(matrix: QRMatrix) -> None:
+    """
+    Add the white separator to the right of (and, for R9 and taller, below) the rMQR finder pattern.
 
     Args:
-        matrix: The QR matrix (must contain only integers 0 and 1)
-        fmt: 15-bit format string to place
-        size: The dimension of the QR code
+        matrix: The rMQR matrix to modify
+    """
+    height = len(matrix)
+    for i in range(min(8, height)):
+        matrix[i][7] = 0  # Vertical separator
+    if height > 7:
+        for i in range(8):
+            matrix[7][i] = 0  # Horizontal separator
+
+
+def place_rmqr_sub_finder_pattern(matrix: QRMatrix) -> None:
+    """
+    Place the 5x5 finder sub-pattern in the bottom-right corner of an rMQR symbol.
+
+    Args:
+        matrix: The rMQR matrix to modify
+    """
+    height, width = len(matrix), len(matrix[0])
+    for r_offset in range(5):
+        for c_offset in range(5):
+            ring = max(abs(r_offset - 2), abs(c_offset - 2))
+            matrix[height - 5 + r_offset][width - 5 + c_offset] = 0 if ring == 1 else 1
+
+
+def place_rmqr_corner_patterns(matrix: QRMatrix) -> None:
+    """
+    Place the rMQR corner finder patterns in the top-right and bottom-left corners.
+
+    The bottom-left corner is part of the finder pattern in R7 symbols, and the
+    separator takes its second row in R9 symbols.
+
+    Args:
+        matrix: The rMQR matrix to modify
+    """
+    height, width = len(matrix), len(matrix[0])
+
+    # Top-right: dark corner module with its two neighbours, light diagonal
+    matrix[0][width - 2] = matrix[0][width - 1] = matrix[1][width - 1] = 1
+    matrix[1][width - 2] = 0
+
+    # Bottom-left
+    if height > 7:
+        matrix[height - 1][0] = matrix[height - 1][1] = matrix[height - 1][2] = 1
+    if height > 9:
+        matrix[height - 2][0] = 1
+        matrix[height - 2][1] = 0
+
+
+def place_rmqr_alignment_patterns(matrix: QRMatrix) -> None:
+    """
+    Place the 3x3 rMQR alignment patterns on the top and bottom edges.
+
+    Args:
+        matrix: The rMQR matrix to modify
+    """
+    height, width = len(matrix), len(matrix[0])
+    for center_c in RMQR_ALIGNMENT_COLUMNS[width]:
+        for r_offset in range(3):
+            for c_offset in range(3):
+                val = 0 if r_offset == 1 and c_offset == 1 else 1  # Dark ring, light centre
+                matrix[r_offset][center_c - 1 + c_offset] = val  # Top edge
+                matrix[height - 1 - r_offset][center_c - 1 + c_offset] = val  # Bottom edge
+
+
+def place_rmqr_timing_patterns(matrix: QRMatrix) -> None:
+    """
+    Place the rMQR timing patterns.
+
+    Timing patterns fill the free modules of all four edges and the vertical
+    lines joining each pair of alignment patterns, dark on even coordinates.
+
+    Args:
+        matrix: The rMQR matrix to modify
+    """
+    height, width = len(matrix), len(matrix[0])
+    for c in range(width):
+        for r in (0, height - 1):
+            if matrix[r][c] is None:
+                matrix[r][c] = 1 if c % 2 == 0 else 0
+    for r in range(height):
+        for c in [0, width - 1] + RMQR_ALIGNMENT_COLUMNS[width]:
+            if matrix[r][c] is None:
+                matrix[r][c] = 1 if r % 2 == 0 else 0
+
+
+def get_rmqr_format_coordinates(height: int, width: int) -> List[tuple]:
+    """
+    Get the coordinates of both rMQR format information copies.
+
+    Each copy is a 3x5 block plus three modules: to the right of the finder
+    pattern, and to the left of and above the finder sub-pattern.
+
+    Args:
+        height: Height of the rMQR symbol
+        width: Width of the rMQR symbol
+
+    Returns:
+        List[tuple]: (finder side (r, c), sub-finder side (r, c)) pairs, least
+                     significant format bit first
+    """
+    coordinates = []
+    for i in range(18):
+        if i < 15:
+            sub_side = (height - 6 + i % 5, width - 8 + i // 5)
+        else:
+            sub_side = (height - 6, width - 20 + i)
+        coordinates.append(((1 + i % 5, 8 + i // 5), sub_side))
+    return coordinates
+
+
+def _compute_rmqr_format_strings(version_indicator: int, ecc_level: str) -> tuple:
+    """
+    Compute the two 18-bit rMQR format information strings.
+
+    Args:
+        version_indicator: rMQR version indicator (0-31, index into RMQR_SIZES)
+        ecc_level: Error correction level ('M' or 'H')
+
+    Returns:
+        tuple: (finder side, sub-finder side) 18-bit strings, most significant bit first
+    """
+    data_6bit_str = RMQR_ECC_LEVEL_INDICATORS[ecc_level] + format(version_indicator, '05b')
+    ecc_12bit_str = _bch_poly_divide(data_6bit_str + '0' * 12, VERSION_INFO_GENERATOR_POLY, 12)
+    format_val = int(data_6bit_str + ecc_12bit_str, 2)
+    return tuple(format(format_val ^ xor_mask, '018b') for xor_mask in RMQR_FORMAT_XOR_MASKS)
+
+
+def get_rmqr_format_strings(version_indicator: int, ecc_level: str) -> tuple:
+    """
+    Return the two 18-bit rMQR format information strings from the precomputed table.
+
+    Args:
+        version_indicator: rMQR version indicator (0-31, index into RMQR_SIZES)
+        ecc_level: Error correction level ('M' or 'H')
+
+    Returns:
+        tuple: (finder side, sub-finder side) 18-bit strings, most significant bit first
+    """
+    return RMQR_FORMAT_INFO_STRINGS[(version_indicator, ecc_level)]
+
+
+def generate_rmqr_function_patterns(version_indicator: int) -> QRMatrix:
+    """
+    Create an rMQR matrix holding only its function patterns.
+
+    Data modules are left as None and the format information areas are marked 'R'.
+
+    Args:
+        version_indicator: rMQR version indicator (0-31, index into RMQR_SIZES)
+
+    Returns:
+        QRMatrix: height x width matrix of function patterns
+    """
+    height, width = RMQR_SIZES[version_indicator]
+    matrix = [[None for _ in range(width)] for _ in range(height)]
+
+    place_finder_pattern(matrix, 0, 0)
+    add_rmqr_separator(matrix)
+    place_rmqr_sub_finder_pattern(matrix)
+    place_rmqr_corner_patterns(matrix)
+    place_rmqr_alignment_patterns(matrix)
+    place_rmqr_timing_patterns(matrix)
+
+    for finder_side, sub_side in get_rmqr_format_coordinates(height, width):
+        matrix[finder_side[0]][finder_side[1]] = 'R'
+        matrix[sub_side[0]][sub_side[1]] = 'R'
+
+    return matrix
+
+
+def generate_rmqr_module(final_bitstream: BitBuffer, version_indicator: int) -> SymbolMatrix:
+    """
+    Generate a complete rMQR matrix with all patterns and data placed.
+
+    Args:
+        final_bitstream: Bit buffer containing all data, ECC, and remainder bits
+        version_indicator: rMQR version indicator (0-31, index into RMQR_SIZES)
+
+    Returns:
+        SymbolMatrix: Complete height x width matrix with the format areas RESERVED
+    """
+    symbol = SymbolMatrix.from_rows(generate_rmqr_function_patterns(version_indicator))
+
+    # Both vertical edges are function patterns: the column pairs run from (width - 2, width - 3) to (1, 0)
+    place_data_bits(symbol, symbol.width, final_bitstream, timing_col=None, right_col=symbol.width - 2)
+
+    return symbol
+
+
+def place_rmqr_format_information(matrix: FinalQRMatrix, fmt: tuple) -> FinalQRMatrix:
+    """
+    Place both copies of the rMQR format information.
+
+    Args:
+        matrix: The rMQR matrix (must contain only integers 0 and 1)
+        fmt: (finder side, sub-finder side) 18-bit strings (see get_rmqr_format_strings), or the
+             36 ready-to-place bits from RMQR_FORMAT_INFO_BITS
 
     Returns:
         FinalQRMatrix: The matrix with format information placed
     """
-    bits = [int(b) for b in fmt]
+    if isinstance(fmt[0], str):
+        fmt = _RMQR_FORMAT_BITS_BY_STRINGS.get(tuple(fmt)) or _rmqr_format_bits(fmt)
+    positions = _rmqr_format_info_positions(len(matrix), len(matrix[0]))
+    for (r, c), bit in zip(positions, fmt):
+        matrix[r][c] = bit
+    return matrix
 
-    # Primary 15 bits around top-left finder pattern
-    for i, (r, c) in enumerate(FORMAT_INFO_COORDINATES_PRIMARY):
-        matrix[r][c] = bits[i]
 
-    # Secondary copy around top-right finder pattern
-    # Bits 0-7 placed horizontally from (8, size-1) to (8, size-8)
-    for i in range(8):
-        matrix[8][size - 1 - i] = bits[i]
+def place_micro_format_information(matrix: FinalQRMatrix, fmt: str) -> FinalQRMatrix:
+    """
+    Place the single copy of the Micro QR format information.
 
-    # Bits 8-14 placed vertically from (size-7, 8) to (0, 8), skipping timing row
-    idx = 8
-    for r_coord in range(8):
-        if r_coord == 6:  # Skip timing pattern row
-            continue
-        matrix[r_coord][8] = bits[idx]
-        idx += 1
+    Args:
+        matrix: The Micro QR matrix (must contain only integers 0 and 1)
+        fmt: 15-bit format string to place (see get_micro_format_string), or the ready-to-place
+             bits from MICRO_FORMAT_INFO_BITS
 
-    # Secondary copy around bottom-left finder pattern
-    # Bits 0-7 placed vertically from (size-1, 8) to (size-8, 8)
-    idx = 0
-    for i in range(8):
-        matrix[size - 1 - i][8] = bits[idx]
-        idx += 1
+    Returns:
+        FinalQRMatrix: The matrix with format information placed
+    """
+    if isinstance(fmt, str):
+        fmt = tuple(int(bit) for bit in fmt)
+    for (r, c), bit in zip(MICRO_FORMAT_INFO_COORDINATES, fmt):
+        matrix[r][c] = bit
+    return matrix
 
-    # Bits 8-14 placed horizontally from (8, 0) to (8, 7), skipping timing column
-    idx = 8
-    version = get_version_from_size(size)
 
-    for c_coord in range(8):
-        if c_coord == 6:  # Skip timing pattern column
-            continue
-        matrix[8][c_coord] = bits[idx]
-        idx += 1
+def place_format_information(matrix: FinalQRMatrix, fmt: str, size: int) -> FinalQRMatrix:
+    """
+    Place format information bits in all required locations.
+
+    Format information is placed in two copies: one around the top-left finder
+    pattern and one split between the top-right and bottom-left finder patterns,
+    so it can be read even if parts of the code are damaged.
+
+    Args:
+        matrix: The QR matrix (must contain only integers 0 and 1)
+        fmt: 15-bit format string to place, or the 30 ready-to-place bits from FORMAT_INFO_BITS
+        size: The dimension of the QR code
 
-        dark_row = 4 * version + 9
-        dark_col = 8
-        matrix[dark_row][dark_col] = 1  # Force dark module
+    Returns:
+        FinalQRMatrix: The matrix with format information placed
+    """
+    if isinstance(fmt, str):
+        fmt = _FORMAT_INFO_BITS_BY_STRING.get(fmt) or tuple(int(bit) for bit in fmt * 2)
 
-        return matrix
+    # Both copies in one scatter: primary around the top-left finder, secondary split
+    # between the bottom-left (bits 0-6) and top-right (bits 7-14) finders
+    for (r, c), bit in zip(FORMAT_INFO_POSITIONS[size], fmt):
+        matrix[r][c] = bit
+
+    # Force dark module at (4*version + 9, 8), next to the bottom-left copy
+    matrix[size - 8][8] = 1
+
+    return matrix
 
 
 def get_size_from_version(version: int) -> int:
@@ -546,6 +1121,25 @@ def get_size_from_version(version: int) -> int:
     return (version - 1) * 4 + 21
 
 
+def get_micro_size(micro_version: int) -> int:
+    """
+    Calculate Micro QR matrix size from its version number.
+
+    Args:
+        micro_version: Micro QR version (1-4 for M1-M4)
+
+    Returns:
+        int: Matrix dimension (11 for M1 up to 17 for M4)
+
+    Raises:
+        ValueError: If micro_version is not between 1 and 4
+    """
+    if not 1 <= micro_version <= 4:
+        raise ValueError(f"Micro QR version must be between 1 and 4, got {micro_version}")
+
+    return micro_version * 2 + 9
+
+
 def get_version_from_size(size: int) -> int:
     """
     Determine QR code version from matrix size.
@@ -567,10 +1161,13 @@ def get_version_from_size(size: int) -> int:
 
 def get_expected_bitstream_length_for_version(version: int) -> int:
     """
-    Get the expected total bitstream length for a specific version at Level L.
+    Get the expected total bitstream length for a specific version.
+
+    The total number of codewords does not depend on the error correction
+    level, only on how they are divided between data and ECC.
 
     Args:
-        version: QR code version (currently supports 1 and 2)
+        version: QR code version (1-40)
 
     Returns:
         int: Total number of bits including data, ECC, and remainder
@@ -578,12 +1175,10 @@ def get_expected_bitstream_length_for_version(version: int) -> int:
     Raises:
         ValueError: If version is not supported
     """
-    if version == 1:
-        return V1_EFFECTIVE_BITSTREAM_LENGTH
-    if version == 2:
-        return V2_EFFECTIVE_BITSTREAM_LENGTH
+    if not 1 <= version <= 40:
+        raise ValueError(f"Expected bitstream length not defined for V{version}.")
 
-    raise ValueError(f"Expected bitstream length not defined for V{version}-L in this context.")
+    return TOTAL_CODEWORDS[version] * 8 + REMAINDER_BITS[version]
 
 
 def print_matrix(matrix: FinalQRMatrix) -> None:
@@ -604,15 +1199,97 @@ def print_matrix(matrix: FinalQRMatrix) -> None:
         print("".join(["██" if module == 1 else "  " for module in row_list]))
 
 
+# --- Precomputed format and version information ---
+# There are only 32 QR format words, 34 version words, 32 Micro QR format words and
+# 64 rMQR format word pairs, so the BCH division runs once here at import. Each word
+# is also stored as ready-to-place bits in the order of its coordinate list, so
+# placement is a single scatter.
+
+def _format_info_positions(size: int) -> List[Tuple[int, int]]:
+    """Return the coordinates of both format copies: bits 0-14 of the primary, then of the secondary."""
+    secondary = [(size - 1 - i, 8) for i in range(7)] + [(8, size - 15 + i) for i in range(7, 15)]
+    return FORMAT_INFO_COORDINATES_PRIMARY + secondary
+
+
+def _rmqr_format_info_positions(height: int, width: int) -> List[Tuple[int, int]]:
+    """Return the finder-side then sub-finder-side format coordinates, least significant bit first."""
+    positions = _RMQR_FORMAT_INFO_POSITIONS.get((height, width))
+    if positions is None:
+        pairs = get_rmqr_format_coordinates(height, width)
+        positions = [finder_side for finder_side, _ in pairs] + [sub_side for _, sub_side in pairs]
+        _RMQR_FORMAT_INFO_POSITIONS[(height, width)] = positions
+    return positions
+
+
+def _rmqr_format_bits(fmt: Sequence[str]) -> Tuple[int, ...]:
+    """Return rMQR format strings as bits in the order of _rmqr_format_info_positions."""
+    finder_bits, sub_bits = fmt
+    return tuple(int(finder_bits[17 - i]) for i in range(18)) + tuple(int(sub_bits[17 - i]) for i in range(18))
+
+
+# QR format words for all (ECC level, mask pattern) pairs
+FORMAT_INFO_STRINGS: Dict[Tuple[str, int], str] = {
+    (level, mask): _compute_format_string(indicator, format(mask, '03b'))
+    for level, indicator in ECC_LEVEL_INDICATORS.items() for mask in range(8)
+}
+_FORMAT_STRINGS_BY_DATA = {ECC_LEVEL_INDICATORS[level] + format(mask, '03b'): fmt
+                           for (level, mask), fmt in FORMAT_INFO_STRINGS.items()}
+
+# Both copies (30 bits) in the order of FORMAT_INFO_POSITIONS
+FORMAT_INFO_BITS: Dict[Tuple[str, int], Tuple[int, ...]] = {
+    key: tuple(int(bit) for bit in fmt * 2) for key, fmt in FORMAT_INFO_STRINGS.items()
+}
+_FORMAT_INFO_BITS_BY_STRING = {FORMAT_INFO_STRINGS[key]: bits for key, bits in FORMAT_INFO_BITS.items()}
+
+# Format coordinates per symbol size (Versions 1-40)
+FORMAT_INFO_POSITIONS: Dict[int, List[Tuple[int, int]]] = {
+    17 + 4 * version: _format_info_positions(17 + 4 * version) for version in range(1, 41)
+}
+
+# Version words for Versions 7-40, and both 6x3 blocks' bits and coordinates (36 each)
+VERSION_INFO_STRINGS: Dict[int, str] = {version: _compute_version_info_string(version) for version in range(7, 41)}
+VERSION_INFO_BITS: Dict[int, Tuple[int, ...]] = {
+    version: tuple(int(bits[17 - i]) for i in range(18) for _ in range(2))  # Coordinates run from the LSB
+    for version, bits in VERSION_INFO_STRINGS.items()
+}
+VERSION_INFO_POSITIONS: Dict[int, List[Tuple[int, int]]] = {
+    version: [position for pair in get_version_info_coordinates(17 + 4 * version) for position in pair]
+    for version in range(7, 41)
+}
+
+# Micro QR format words per (symbol number, Micro QR mask pattern), and their bits
+MICRO_FORMAT_INFO_STRINGS: Dict[Tuple[int, int], str] = {
+    (symbol_number, mask): _compute_micro_format_string(symbol_number, mask)
+    for symbol_number in range(8) for mask in range(4)
+}
+MICRO_FORMAT_INFO_BITS: Dict[Tuple[int, int], Tuple[int, ...]] = {
+    key: tuple(int(bit) for bit in fmt) for key, fmt in MICRO_FORMAT_INFO_STRINGS.items()
+}
+
+# rMQR format word pairs per (version indicator, ECC level), and their bits
+RMQR_FORMAT_INFO_STRINGS: Dict[Tuple[int, str], tuple] = {
+    (version_indicator, level): _compute_rmqr_format_strings(version_indicator, level)
+    for version_indicator in range(len(RMQR_SIZES)) for level in RMQR_ECC_LEVEL_INDICATORS
+}
+RMQR_FORMAT_INFO_BITS: Dict[Tuple[int, str], Tuple[int, ...]] = {
+    key: _rmqr_format_bits(fmt) for key, fmt in RMQR_FORMAT_INFO_STRINGS.items()
+}
+_RMQR_FORMAT_BITS_BY_STRINGS = {RMQR_FORMAT_INFO_STRINGS[key]: bits for key, bits in RMQR_FORMAT_INFO_BITS.items()}
+_RMQR_FORMAT_INFO_POSITIONS: Dict[Tuple[int, int], List[Tuple[int, int]]] = {}
+
+
 # Test code for module functionality
 if __name__ == "__main__":
     import matrix_masking  # Import for testing mask pattern functionality
+    from symbol_matrix import RESERVED
 
     print("--- Testing Version 1 (e.g., 'HELLO WORLD' with a representative bitstream) ---")
 
     # Example bitstream for Version 1 with Level L error correction
     # This represents a complete encoded message including mode, count, data, and ECC
-    test_v1_final_bitstream = "0010000001011011000010110111100011010001011100101101110001001101010000110100001110110000010001111011000001000111101100000100011101100110001001001000001010111110100110111111111100000001111001100010101011010101010001111110111110111100"
+    test_v1_final_bitstream_str = "0010000001011011000010110111100011010001011100101101110001001101010000110100001110110000010001111011000001000111101100000100011101100110001001001000001010111110100110111111111100000001111001100010101011010101010001111110111110111100"
+    test_v1_final_bitstream = BitBuffer()
+    test_v1_final_bitstream.append_bits(int(test_v1_final_bitstream_str, 2), len(test_v1_final_bitstream_str))
     print(f"Test V1 Bitstream length: {len(test_v1_final_bitstream)}")
 
     if len(test_v1_final_bitstream) == V1_EFFECTIVE_BITSTREAM_LENGTH:
@@ -622,7 +1299,7 @@ if __name__ == "__main__":
         print(
             "\nVersion 1 Matrix (After generate_qr_module, 'R' for Format - data possibly not final visually until masking):")
         for r_idx, row_val in enumerate(v1_matrix_intermediate):
-            print(f"Row {r_idx:02d}: {''.join(str(c) if c is not None else '_' for c in row_val)}")
+            print(f"Row {r_idx:02d}: {''.join('R' if c == RESERVED else str(c) for c in row_val)}")
 
         # Apply masking to find best pattern
         func_map_v1 = matrix_masking.create_function_pattern_matrix(1)
@@ -633,7 +1310,7 @@ if __name__ == "__main__":
         print(f"V1 Format string for L,{best_mask_v1}: {format_str_v1}")
 
         # Convert matrix to integer-only format for final format placement
-        temp_v1_int_matrix = [[val if isinstance(val, int) else 0 for val in r_list] for r_list in masked_v1_with_R]
+        temp_v1_int_matrix = masked_v1_with_R.to_modules()
 
         # Place format information and display final result
         final_v1_qr = place_format_information(temp_v1_int_matrix, format_str_v1, 21)
@@ -647,7 +1324,9 @@ if __name__ == "__main__":
     # Example bitstream for Version 2 - demonstrating with 'known' encoded
     dummy_v2_payload = "0100000010101101011011011110111011101101110"  # Mode + Count + "known" data
     remaining_for_v2 = V2_EFFECTIVE_BITSTREAM_LENGTH - len(dummy_v2_payload)
-    test_v2_final_bitstream = dummy_v2_payload + "0" * remaining_for_v2
+    test_v2_final_bitstream = BitBuffer(V2_EFFECTIVE_BITSTREAM_LENGTH)
+    test_v2_final_bitstream.append_bits(int(dummy_v2_payload, 2), len(dummy_v2_payload))
+    test_v2_final_bitstream.append_bits(0, remaining_for_v2)
     print(f"Test V2 Final Bitstream Length: {len(test_v2_final_bitstream)}")
 
     if len(test_v2_final_bitstream) == V2_EFFECTIVE_BITSTREAM_LENGTH:
@@ -662,7 +1341,7 @@ if __name__ == "__main__":
         format_str_v2 = get_format_string("01", format(best_mask_v2, '03b'))
         print(f"V2 Format string for L,{best_mask_v2}: {format_str_v2}")
 
-        temp_v2_int_matrix = [[val if isinstance(val, int) else 0 for val in r_list] for r_list in masked_v2_with_R]
+        temp_v2_int_matrix = masked_v2_with_R.to_modules()
 
         final_v2_qr = place_format_information(temp_v2_int_matrix, format_str_v2, 25)
         print("\nFinal Version 2 Matrix (Masked, with Format Info):")
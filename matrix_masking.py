@@ -10,20 +10,42 @@ standard mask patterns and determine the optimal pattern based on penalty scorin
 
 Key Features:
 - Implementation of all 8 QR code mask patterns (0-7)
-- Function pattern matrix generation to identify maskable regions
-- Penalty score calculation using all four QR code penalty rules
-- Automatic selection of optimal mask pattern for minimal penalty
+- Mask planes: each pattern tiled from its 12x12 period and limited to the data modules,
+  built once per function bitmap, so applying a mask is a single XOR
+- Function pattern maps to identify maskable regions, taken from the cached version templates
+- Penalty score calculation using all four QR code penalty rules, Rules 1 to 3 fused into
+  a single pass per direction
+- Bitboard penalty engine: the symbol and its transpose packed into one int each, so every
+  rule is a handful of shift, AND and popcount operations over the whole symbol, with the
+  intermediate boards shared between rules
+- Optional numpy engine for larger symbols (off unless QR_NUMPY_MASKING=1): all 8 masks
+  applied as one broadcast XOR and scored together on the 8 x N x N stack
+- Automatic selection of optimal mask pattern for minimal penalty, by branch and bound:
+  Rules added in the order 4, 2, 1, 3 and scanned in bands of lines, abandoning a mask
+  as soon as it cannot beat the best one
+- Micro QR: the 4 Micro QR masks scored on the dark modules of the right and bottom edges
+- rMQR: function pattern map and the fixed mask; penalty rules accept rectangular matrices
 
 The module works in conjunction with matrix_layout to ensure proper QR code
 generation with optimal readability.
 """
 
+import logging
 import math
-from typing import List, Tuple, Union
-import matrix_layout  # For get_size_from_version, ALIGNMENT_PATTERN_COORDS_LOOKUP, FORMAT_INFO_COORDINATES_PRIMARY
+import os
+from typing import Dict, Iterable, List, Optional, Sequence, Tuple
+import matrix_layout  # For get_qr_template, get_micro_size and generate_rmqr_function_patterns
+from symbol_matrix import SymbolMatrix
+
+try:
+    import numpy as np
+except ImportError:  # numpy is optional, only the vectorised penalty engine uses it
+    np = None
+
+logger = logging.getLogger(__name__)
 
 # Type aliases for clarity
-QRMatrixWithPlaceholders = List[List[Union[int, str, None]]]  # Can contain 'R' for reserved
+QRMatrixWithPlaceholders = SymbolMatrix  # Symbol whose format areas are still RESERVED
 QRMatrix = List[List[int]]  # Pure integer matrix for penalty calculations
 
 
@@ -50,7 +72,7 @@ def _should_mask_pattern_3(r: int, c: int) -> bool:
 
 def _should_mask_pattern_4(r: int, c: int) -> bool:
     """Pattern 4: (floor(row/2) + floor(column/3)) mod 2 == 0"""
-    return (math.floor(r / 2) + math.floor(c / 3)) % 2 == 0
+    return (r // 2 + c // 3) % 2 == 0
 
 
 def _should_mask_pattern_5(r: int, c: int) -> bool:
@@ -81,6 +103,61 @@ MASK_CONDITION_FUNCTIONS = {
 }
 
 
+# Micro QR mask patterns 0-3 are QR mask patterns 1, 4, 6 and 7
+MICRO_MASK_PATTERNS = (1, 4, 6, 7)
+
+# rMQR always uses QR mask pattern 4, so no mask is recorded in its format information
+RMQR_MASK_PATTERN = 4
+
+# Every mask pattern repeats every 12 rows and 12 columns (periods 1, 2, 3, 4 and 6 all divide 12),
+# so one 12x12 tile per pattern describes it for any symbol size
+MASK_TILE_SIZE = 12
+_MASK_TILES = tuple(
+    tuple(bytes(MASK_CONDITION_FUNCTIONS[pattern_id](r, c) for c in range(MASK_TILE_SIZE))
+          for r in range(MASK_TILE_SIZE))
+    for pattern_id in range(8)
+)
+
+# bytes.translate table swapping 0 and 1, turning a function bitmap into a data module bitmap
+_DATA_MODULE_BITS = bytes([1, 0]) + bytes(254)
+
+# Mask planes per function bitmap, see get_mask_planes
+_MASK_PLANES: Dict[Tuple[int, int, bytes], Tuple[bytes, ...]] = {}
+
+
+def get_mask_planes(function_bits: bytes, height: int, width: int) -> Tuple[bytes, ...]:
+    """
+    Return the 8 mask planes of a symbol layout.
+
+    Each plane holds, row-major, a 1 for every data module its mask pattern
+    inverts and 0 elsewhere (function patterns are never masked). Planes are
+    tiled from the 12x12 pattern tiles without calling the condition functions,
+    and cached per function bitmap, so every QR version builds them once.
+
+    Args:
+        function_bits: Row-major function bitmap of the symbol (1 = function pattern)
+        height: Number of rows
+        width: Number of columns
+
+    Returns:
+        Tuple[bytes, ...]: Planes for mask patterns 0-7, height * width bytes each
+    """
+    key = (height, width, function_bits)
+    planes = _MASK_PLANES.get(key)
+    if planes is None:
+        module_count = height * width
+        data_modules = int.from_bytes(function_bits.translate(_DATA_MODULE_BITS), 'big')
+        repeats = width // MASK_TILE_SIZE + 1
+        planes = []
+        for tile in _MASK_TILES:
+            tile_rows = [(tile_row * repeats)[:width] for tile_row in tile]
+            pattern = b''.join(tile_rows[r % MASK_TILE_SIZE] for r in range(height))
+            planes.append((int.from_bytes(pattern, 'big') & data_modules).to_bytes(module_count, 'big'))
+        planes = tuple(planes)
+        _MASK_PLANES[key] = planes
+    return planes
+
+
 def apply_specific_mask_pattern(
         pattern_id: int,
         matrix: QRMatrixWithPlaceholders,
@@ -91,12 +168,15 @@ def apply_specific_mask_pattern(
 
     Masking inverts (XORs) module values in data regions only, leaving function
     patterns (finders, timing, format info, etc.) unchanged. This improves QR
-    code readability by breaking up patterns of same-coloured modules.
+    code readability by breaking up patterns of same-coloured modules. The
+    whole symbol is XORed with the pattern's mask plane (see get_mask_planes)
+    in one operation, so every data module must already hold a 0 or 1.
 
     Args:
         pattern_id: Mask pattern ID (0-7)
-        matrix: QR matrix with data, function patterns, and placeholders
-        function_map: Boolean matrix marking function pattern locations (True = don't mask)
+        matrix: Symbol with data, function patterns, and reserved areas
+        function_map: Boolean matrix marking function pattern locations (True = don't mask);
+                      must match the matrix's function bitmap, from which the plane is built
 
     Returns:
         QRMatrixWithPlaceholders: New matrix with mask pattern applied
@@ -108,244 +188,93 @@ def apply_specific_mask_pattern(
         raise ValueError("Mask ID must be 0-7.")
 
     # Validate matrix dimensions
-    rows = len(matrix)
-    cols = len(matrix[0]) if matrix and matrix[0] else 0
+    rows, cols = matrix.height, matrix.width
 
-    if not matrix or len(function_map) != rows or (0 < cols != len(function_map[0])):
+    if not rows or len(function_map) != rows or cols != len(function_map[0]):
         raise ValueError("Dimension mismatch or empty matrix/function_map.")
 
-    # Create deep copy to avoid modifying original
-    out_matrix = [row[:] for row in matrix]
-    mask_func = MASK_CONDITION_FUNCTIONS[pattern_id]
-
-    # Apply mask only to data regions (non-functional integer cells)
-    for r in range(rows):
-        for c in range(cols):
-            # Only mask if: not a function pattern AND is an integer value
-            if not function_map[r][c] and isinstance(out_matrix[r][c], int):
-                if mask_func(r, c):
-                    out_matrix[r][c] ^= 1  # XOR with 1 to invert
+    # XOR the module states with the plane; the copy shares the function bitmap
+    plane = get_mask_planes(matrix.function_bits, rows, cols)[pattern_id]
+    out_matrix = matrix.copy()
+    masked = int.from_bytes(matrix.cells, 'big') ^ int.from_bytes(plane, 'big')
+    out_matrix.cells = bytearray(masked.to_bytes(rows * cols, 'big'))
 
     return out_matrix
 
 
-def create_function_pattern_matrix(version: int) -> List[List[bool]]:
+def create_function_pattern_matrix(version: int) -> matrix_layout.FunctionMap:
     """
-    Create a boolean matrix marking all function pattern locations.
+    Return the boolean matrix marking all function pattern locations.
 
     Function patterns include finder patterns, separators, timing patterns,
-    format information areas, dark module, and alignment patterns. These areas
-    are not affected by masking.
+    format information areas, dark module, alignment patterns, and version
+    information blocks. These areas are not affected by masking.
+
+    The map is the one stored in the cached version template (see
+    matrix_layout.get_qr_template), so it is shared and must not be modified.
 
     Args:
         version: QR code version (1-40)
 
     Returns:
-        List[List[bool]]: Matrix where True = function pattern, False = data/ECC area
+        FunctionMap: Matrix where True = function pattern, False = data/ECC area
     """
-    size = matrix_layout.get_size_from_version(version)
-    func_matrix = [[False for _ in range(size)] for _ in range(size)]
-
-    def mark_area(r_start: int, c_start: int, r_len: int, c_len: int) -> None:
-        """Mark a rectangular area as function pattern."""
-        for r_val in range(r_start, r_start + r_len):
-            for c_val in range(c_start, c_start + c_len):
-                if 0 <= r_val < size and 0 <= c_val < size:
-                    func_matrix[r_val][c_val] = True
-
-    # Mark finder patterns (7x7) plus separators (1 module wide)
-    # This creates 8x8 protected areas in three corners
-    mark_area(0, 0, 8, 8)  # Top-left
-    mark_area(0, size - 8, 8, 8)  # Top-right
-    mark_area(size - 8, 0, 8, 8)  # Bottom-left
-
-    # Mark timing patterns (alternating modules between finders)
-    for i in range(8, size - 8):
-        func_matrix[6][i] = True  # Horizontal timing
-        func_matrix[i][6] = True  # Vertical timing
-
-    # Mark format information areas (15 bits around finders)
-    # Primary format area (around top-left finder)
-    for r_coord, c_coord in matrix_layout.FORMAT_INFO_COORDINATES_PRIMARY:
-        if 0 <= r_coord < size and 0 <= c_coord < size:
-            func_matrix[r_coord][c_coord] = True
-
-    # Secondary format info copies (for redundancy)
-    # Top-right horizontal copy
-    for j_val in range(8):
-        func_matrix[8][size - 1 - j_val] = True
-
-    # Bottom-left vertical copy
-    for i_val in range(8):
-        func_matrix[size - 1 - i_val][8] = True
-
-    # Note: Dark module at (size-8, 8) is already marked as format info area
-
-    # Mark alignment patterns (Version 2 and above)
-    if version >= 2:
-        coords_ref_list = matrix_layout.ALIGNMENT_PATTERN_COORDS_LOOKUP.get(version, [])
-
-        # Generate all possible alignment pattern centres
-        all_possible_centers_for_version = []
-        if coords_ref_list:
-            for r_coord_val in coords_ref_list:
-                for c_coord_val in coords_ref_list:
-                    # Skip centres that would overlap with finder pattern centres
-                    if (r_coord_val == 6 and c_coord_val == 6) or \
-                            (r_coord_val == 6 and c_coord_val == size - 7) or \
-                            (r_coord_val == size - 7 and c_coord_val == 6):
-                        continue
-                    all_possible_centers_for_version.append((r_coord_val, c_coord_val))
-
-        # Place alignment patterns where they don't overlap with finder areas
-        for r_center, c_center in all_possible_centers_for_version:
-            # Check for overlap with 8x8 finder pattern areas
-            overlaps_finder_area = False
-            finder_areas = [(0, 0, 8, 8), (0, size - 8, 8, 8), (size - 8, 0, 8, 8)]
-
-            for fr, fc, flr, flc in finder_areas:
-                # Alignment pattern spans 5x5 centred at (r_center, c_center)
-                if not (r_center + 2 < fr or r_center - 2 > fr + flr - 1 or
-                        c_center + 2 < fc or c_center - 2 > fc + flc - 1):
-                    overlaps_finder_area = True
-                    break
-
-            if overlaps_finder_area:
-                continue
+    return matrix_layout.get_qr_template(version).function_map
 
-            # Mark 5x5 alignment pattern area
-            for r_offset in range(-2, 3):
-                for c_offset in range(-2, 3):
-                    if 0 <= r_center + r_offset < size and 0 <= c_center + c_offset < size:
-                        func_matrix[r_center + r_offset][c_center + c_offset] = True
 
-    return func_matrix
-
-
-def _calculate_penalty_rule1(matrix: QRMatrix) -> int:
+def create_micro_function_pattern_matrix(micro_version: int) -> List[List[bool]]:
     """
-    Calculate penalty for Rule 1: Adjacent modules in row/column in same colour.
+    Create a boolean matrix marking the function patterns of a Micro QR symbol.
 
-    Penalty is 3 points plus 1 for each module beyond 5 in a consecutive group.
+    The finder pattern, separator and format information fill the top-left 9x9
+    modules; the timing patterns run along row 0 and column 0.
 
     Args:
-        matrix: QR matrix to evaluate
+        micro_version: Micro QR version (1-4 for M1-M4)
 
     Returns:
-        int: Total penalty score for Rule 1
+        List[List[bool]]: Matrix where True = function pattern, False = data/ECC area
     """
-    penalty = 0
-    size = len(matrix)
-
-    # Check rows for consecutive modules
-    for r_idx in range(size):
-        count = 1
-        current_val = matrix[r_idx][0] if size > 0 else -1
-
-        for c_idx in range(1, size):
-            if matrix[r_idx][c_idx] == current_val:
-                count += 1
-            else:
-                # End of consecutive group
-                if count >= 5:
-                    penalty += (3 + (count - 5))
-                current_val = matrix[r_idx][c_idx]
-                count = 1
-
-        # Check last group in row
-        if count >= 5:
-            penalty += (3 + (count - 5))
-
-    # Check columns for consecutive modules
-    for c_idx in range(size):
-        count = 1
-        current_val = matrix[0][c_idx] if size > 0 else -1
-
-        for r_idx in range(1, size):
-            if matrix[r_idx][c_idx] == current_val:
-                count += 1
-            else:
-                # End of consecutive group
-                if count >= 5:
-                    penalty += (3 + (count - 5))
-                current_val = matrix[r_idx][c_idx]
-                count = 1
-
-        # Check last group in column
-        if count >= 5:
-            penalty += (3 + (count - 5))
-
-    return penalty
+    size = matrix_layout.get_micro_size(micro_version)
+    func_matrix = [[r < 9 and c < 9 for c in range(size)] for r in range(size)]
+    for i in range(size):
+        func_matrix[0][i] = True  # Horizontal timing
+        func_matrix[i][0] = True  # Vertical timing
+    return func_matrix
 
 
-def _calculate_penalty_rule2(matrix: QRMatrix) -> int:
+def create_rmqr_function_pattern_matrix(version_indicator: int) -> List[List[bool]]:
     """
-    Calculate penalty for Rule 2: 2x2 blocks of same colour.
-
-    Each 2x2 block of the same colour incurs 3 penalty points.
+    Create a boolean matrix marking the function patterns of an rMQR symbol.
 
     Args:
-        matrix: QR matrix to evaluate
+        version_indicator: rMQR version indicator (0-31)
 
     Returns:
-        int: Total penalty score for Rule 2
+        List[List[bool]]: height x width matrix where True = function pattern, False = data/ECC area
     """
-    penalty = 0
-    size = len(matrix)
-
-    # Check all possible 2x2 blocks
-    for r_idx in range(size - 1):
-        for c_idx in range(size - 1):
-            # Check if all four modules in 2x2 block are the same
-            if matrix[r_idx][c_idx] == matrix[r_idx + 1][c_idx] and \
-                    matrix[r_idx][c_idx] == matrix[r_idx][c_idx + 1] and \
-                    matrix[r_idx][c_idx] == matrix[r_idx + 1][c_idx + 1]:
-                penalty += 3
-
-    return penalty
+    template = matrix_layout.generate_rmqr_function_patterns(version_indicator)
+    return [[cell is not None for cell in row] for row in template]
 
 
-def _calculate_penalty_rule3(matrix: QRMatrix) -> int:
+def calculate_micro_mask_score(matrix: QRMatrix) -> int:
     """
-    Calculate penalty for Rule 3: Specific patterns resembling finder patterns.
+    Score a masked Micro QR symbol; higher is better.
 
-    Looks for patterns of 1:1:3:1:1 ratio (dark:light:dark:light:dark) with
-    4 light modules on either side. Each occurrence incurs 40 penalty points.
+    SUM1 and SUM2 count the dark modules of the right and bottom edges
+    (excluding the timing pattern modules). The score is 16 times the smaller
+    sum plus the larger, favouring symbols whose open edges are well populated.
 
     Args:
-        matrix: QR matrix to evaluate
+        matrix: Micro QR matrix to evaluate (must contain only 0s and 1s)
 
     Returns:
-        int: Total penalty score for Rule 3
+        int: The evaluation score
     """
-    penalty = 0
     size = len(matrix)
-
-    # Define patterns to search for (as per Thonky specification)
-    # Pattern: LLLL D L DDD L D or D L DDD L D LLLL
-    patterns_to_check_horizontal = [
-        [0, 0, 0, 0, 1, 0, 1, 1, 1, 0, 1],  # 00001011101
-        [1, 0, 1, 1, 1, 0, 1, 0, 0, 0, 0]  # 10111010000
-    ]
-    pat_len = 11
-
-    # Check rows for patterns
-    for r_idx in range(size):
-        for c_idx in range(size - pat_len + 1):
-            current_row_slice = matrix[r_idx][c_idx: c_idx + pat_len]
-            if current_row_slice == patterns_to_check_horizontal[0] or \
-                    current_row_slice == patterns_to_check_horizontal[1]:
-                penalty += 40
-
-    # Check columns for patterns
-    for c_idx in range(size):
-        for r_idx in range(size - pat_len + 1):
-            current_col_slice = [matrix[k][c_idx] for k in range(r_idx, r_idx + pat_len)]
-            if current_col_slice == patterns_to_check_horizontal[0] or \
-                    current_col_slice == patterns_to_check_horizontal[1]:
-                penalty += 40
-
-    return penalty
+    sum1 = sum(matrix[r][size - 1] for r in range(1, size))  # Right edge
+    sum2 = sum(matrix[size - 1][c] for c in range(1, size))  # Bottom edge
+    return min(sum1, sum2) * 16 + max(sum1, sum2)
 
 
 def _calculate_penalty_rule4(matrix: QRMatrix) -> int:
@@ -361,12 +290,11 @@ def _calculate_penalty_rule4(matrix: QRMatrix) -> int:
     Returns:
         int: Total penalty score for Rule 4
     """
-    size = len(matrix)
-    if size == 0:
+    if not matrix:
         return 0
 
     # Count total modules and dark modules
-    total_modules = size * size
+    total_modules = len(matrix) * len(matrix[0])
     dark_modules = sum(row.count(1) for row in matrix)
 
     # Calculate percentage of dark modules
@@ -379,6 +307,57 @@ def _calculate_penalty_rule4(matrix: QRMatrix) -> int:
     return penalty_factor * 10
 
 
+# The two finder-like patterns of Rule 3 (each is the other reversed)
+_FINDER_LIKE_PATTERNS = ((0, 0, 0, 0, 1, 0, 1, 1, 1, 0, 1), (1, 0, 1, 1, 1, 0, 1, 0, 0, 0, 0))
+
+# Rule 3 patterns as 11-bit window values, first module in the most significant bit
+_FINDER_LIKE_WINDOWS = tuple(int(''.join(map(str, pattern)), 2) for pattern in _FINDER_LIKE_PATTERNS)
+
+
+def _scan_penalty_lines(lines: Iterable[Sequence[int]], count_blocks: bool) -> Tuple[int, int, int]:
+    """
+    Score Rules 1 and 3, and optionally Rule 2, in a single pass over the lines of a matrix.
+
+    Each module is visited once: it extends or ends the current run (Rule 1),
+    is shifted into an 11-module window compared with the finder-like patterns
+    (Rule 3) and, when counting blocks, closes a 2x2 block with the module
+    before it and the two modules of the previous line (Rule 2).
+
+    Args:
+        lines: Rows (or columns) of 0s and 1s, all of the same length
+        count_blocks: Whether to count Rule 2 blocks; only needed for one of the two directions
+
+    Returns:
+        Tuple[int, int, int]: Rule 1, Rule 2 (0 unless counted) and Rule 3 penalties
+    """
+    rule1 = rule2 = rule3 = 0
+    previous = None
+    for line in lines:
+        colour = None
+        run = 0
+        window = 0
+        for index, module in enumerate(line):
+            if module == colour:
+                run += 1
+            else:
+                if run >= 5:
+                    rule1 += run - 2  # 3 + (run - 5)
+                colour = module
+                run = 1
+
+            window = ((window << 1) | module) & 0x7FF
+            if index >= 10 and window in _FINDER_LIKE_WINDOWS:
+                rule3 += 40
+
+            if count_blocks and previous is not None and run >= 2 and \
+                    previous[index] == module and previous[index - 1] == module:
+                rule2 += 3
+        if run >= 5:
+            rule1 += run - 2
+        previous = line
+    return rule1, rule2, rule3
+
+
 def calculate_total_penalty_score(matrix: QRMatrix, mask_id_for_debug: int = -1) -> Tuple[int, List[int]]:
     """
     Calculate the total penalty score for a masked QR matrix.
@@ -388,30 +367,336 @@ def calculate_total_penalty_score(matrix: QRMatrix, mask_id_for_debug: int = -1)
 
     Args:
         matrix: QR matrix to evaluate (must contain only 0s and 1s)
-        mask_id_for_debug: Mask pattern ID for debug output
+        mask_id_for_debug: Mask pattern ID for the warning logged on a malformed matrix
 
     Returns:
-        Tuple[int, List[int]]: Total penalty score and list of individual rule penalties
+        Tuple[int, List[int]]: Total penalty score and list of individual rule penalties;
+        infinity for every score of an empty or malformed matrix, so it never wins a mask search
     """
     # Validate matrix
     if not matrix or (len(matrix) > 0 and not matrix[0]):
-        print(
-            f"Warning: calculate_total_penalty_score received an empty or malformed matrix for mask {mask_id_for_debug}")
-        return 10 ^ 18, [10 ^ 18] * 4
-
-    # Calculate individual penalties for each rule
-    penalties = [
-        _calculate_penalty_rule1(matrix),
-        _calculate_penalty_rule2(matrix),
-        _calculate_penalty_rule3(matrix),
-        _calculate_penalty_rule4(matrix)
-    ]
+        logger.warning("calculate_total_penalty_score received an empty or malformed matrix for mask %d",
+                       mask_id_for_debug)
+        return math.inf, [math.inf] * 4
+
+    # Rules 1 to 3 in one pass over the rows and one over the columns
+    rule1, rule2, rule3 = _scan_penalty_lines(matrix, True)
+    column_rule1, _, column_rule3 = _scan_penalty_lines(zip(*matrix), False)
+    penalties = [rule1 + column_rule1, rule2, rule3 + column_rule3, _calculate_penalty_rule4(matrix)]
 
     total_score = sum(penalties)
 
     return total_score, penalties
 
 
+# --- Bitboard penalty engine ---
+# A symbol is packed into a single int, row by row from the most significant bit,
+# with a 0 guard bit after each row so that shifts never carry a run, block or
+# pattern from one row into the next. Shifting right by 1 moves to the module on
+# the left, shifting by width + 1 to the module above. Columns are scored on a
+# second board packed from the transposed symbol. The results equal those of
+# calculate_total_penalty_score; tests/test_matrix_masking.py checks both against
+# a rule-by-rule reference scorer.
+
+# bytes.translate table turning 0/1 module bytes into ASCII '0'/'1' digits for int(..., 2)
+_ASCII_DIGITS = bytes(range(48, 50)) + bytes(254)
+
+# Mask pattern boards per function bitmap, see _mask_boards
+_MASK_BOARDS: Dict[Tuple[int, int, bytes], Tuple[Tuple[int, int], ...]] = {}
+
+
+def _pack_board(modules: bytes, height: int, width: int) -> int:
+    """Pack row-major 0/1 module bytes into a board, each row followed by a 0 guard bit."""
+    digits = modules.translate(_ASCII_DIGITS)
+    return int(b'0'.join(digits[start:start + width] for start in range(0, height * width, width)) + b'0', 2)
+
+
+def _transpose_modules(modules: bytes, height: int, width: int) -> bytes:
+    """Return row-major module bytes of the transposed symbol (columns become rows)."""
+    return b''.join(modules[c::width] for c in range(width))
+
+
+def _board_valid_bits(height: int, width: int) -> int:
+    """Return the board with every module bit set and every guard bit clear."""
+    return int((b'1' * width + b'0') * height, 2)
+
+
+def _mask_boards(function_bits: bytes, height: int, width: int) -> Tuple[Tuple[int, int], ...]:
+    """
+    Return the (row board, column board) of the modules each mask pattern inverts.
+
+    The boards are packed from the mask planes (see get_mask_planes), so only
+    data modules are set and XORing a symbol's boards with them applies the
+    mask. Built once per function bitmap and cached.
+    """
+    key = (height, width, function_bits)
+    boards = _MASK_BOARDS.get(key)
+    if boards is None:
+        boards = []
+        for plane in get_mask_planes(function_bits, height, width):
+            boards.append((_pack_board(plane, height, width),
+                           _pack_board(_transpose_modules(plane, height, width), width, height)))
+        boards = tuple(boards)
+        _MASK_BOARDS[key] = boards
+    return boards
+
+
+def _board_line_penalties(board: int, light: int, stride: int = 0) -> Tuple[int, int, int]:
+    """
+    Score Rules 1 and 3 on every line of a board, and Rule 2 when stride is given, in one pass.
+
+    The rules share their intermediate boards: the same-colour pairs feed both
+    the 2x2 blocks and the runs, and the runs of 4 light modules are also the
+    light side of both finder-like patterns, whose 1:1:3:1:1 core is built once.
+
+    Args:
+        board: Board of dark modules
+        light: Board of light modules (board XOR the valid bits)
+        stride: Row length including its guard bit, to count 2x2 blocks on a row board; 0 to skip them
+
+    Returns:
+        Tuple[int, int, int]: Rule 1, Rule 2 (0 without stride) and Rule 3 penalties
+    """
+    rule1 = 0
+    blocks = 0
+    for same in (board, light):
+        # Bits where the module and the 1, 3 and 4 before it on the line share its colour
+        pairs = same & same >> 1
+        if stride:
+            blocks += (pairs & pairs >> stride).bit_count()  # The pair above matches too
+        fours = pairs & pairs >> 2
+        run5 = fours & same >> 4
+        # A run of n >= 5 leaves n - 4 bits, plus 2 for each run (the bit ending each one)
+        rule1 += run5.bit_count() + 2 * (run5 & ~(run5 >> 1)).bit_count()
+    light4 = fours  # Left over from the light pass
+
+    # Dark-light-dark-dark-dark-light-dark, then 4 light modules after or before it
+    core = board & light >> 1 & board >> 2 & board >> 3 & board >> 4 & light >> 5 & board >> 6
+    matches = (light4 & core >> 4).bit_count() + (core & light4 >> 7).bit_count()
+    return rule1, blocks * 3, matches * 40
+
+
+def _board_penalty_score(rows: int, columns: int, height: int, width: int,
+                         row_valid: int, column_valid: int) -> Tuple[int, List[int]]:
+    """Score a symbol from its row and column boards; see calculate_symbol_penalty_score."""
+    rule1, rule2, rule3 = _board_line_penalties(rows, rows ^ row_valid, width + 1)
+    column_rule1, _, column_rule3 = _board_line_penalties(columns, columns ^ column_valid)
+    rule4 = _board_rule4(rows, height, width)
+
+    penalties = [rule1 + column_rule1, rule2, rule3 + column_rule3, rule4]
+    return sum(penalties), penalties
+
+
+def _board_rule4(rows: int, height: int, width: int) -> int:
+    """Rule 4 from a row board, exactly as _calculate_penalty_rule4."""
+    percent_dark = (rows.bit_count() / (height * width)) * 100.0
+    return math.floor(abs(percent_dark - 50) / 5) * 10
+
+
+def _board_rule1(board: int, light: int) -> int:
+    """Rule 1 on every line of a board, as computed by _board_line_penalties."""
+    penalty = 0
+    for same in (board, light):
+        pairs = same & same >> 1
+        run5 = pairs & pairs >> 2 & same >> 4
+        penalty += run5.bit_count() + 2 * (run5 & ~(run5 >> 1)).bit_count()
+    return penalty
+
+
+def _board_rule2(board: int, light: int, stride: int) -> int:
+    """Rule 2 on a row board, counting each 2x2 block at its lower row, as computed by _board_line_penalties."""
+    blocks = 0
+    for same in (board, light):
+        pairs = same & same >> 1
+        blocks += (pairs & pairs >> stride).bit_count()
+    return blocks * 3
+
+
+def _board_rule3(board: int, light: int) -> int:
+    """Rule 3 on every line of a board, as computed by _board_line_penalties."""
+    pairs = light & light >> 1
+    light4 = pairs & pairs >> 2
+    core = board & light >> 1 & board >> 2 & board >> 3 & board >> 4 & light >> 5 & board >> 6
+    return ((light4 & core >> 4).bit_count() + (core & light4 >> 7).bit_count()) * 40
+
+
+# Bands per scan when _board_penalty_bounded checks the bound inside a scan. More bands
+# check the bound sooner but cost more Python work per mask; 2 measured fastest on random
+# Version 1-40 symbols short of not splitting the scans at all.
+_BOUND_BANDS = 2
+
+
+def _board_bands(board: int, light: int, line_count: int, stride: int,
+                 overlap: int = 0) -> Iterable[Tuple[int, int]]:
+    """
+    Split a board and its light board into _BOUND_BANDS bands of whole lines, first line first.
+
+    Guard bits are clear in both boards, so Rules 1 and 3 never match across
+    a line end and their band penalties add up to the whole board's. Rule 2
+    also looks at the line above, which overlap=1 includes at the top of each
+    band (above the first line of a band nothing is set, so no block is counted twice).
+    """
+    band_lines = -(-line_count // _BOUND_BANDS)
+    for first in range(0, line_count, band_lines):
+        stop = min(first + band_lines, line_count)
+        shift = (line_count - stop) * stride
+        band_bits = (1 << (stop - max(first - overlap, 0)) * stride) - 1
+        yield board >> shift & band_bits, light >> shift & band_bits
+
+
+def _board_penalty_bounded(rows: int, columns: int, height: int, width: int, row_valid: int, column_valid: int,
+                           rule4: int, mask_id: int, best: Tuple[float, int]) -> Tuple[Optional[List[int]], int]:
+    """
+    Score a mask like _board_penalty_score, giving up as soon as it cannot beat the best mask.
+
+    Rules are added in the order 4, 2, 1, 3: Rule 4, which the caller already
+    has, then Rule 2 on the rows, Rule 1 on the rows and columns and Rule 3 on
+    the rows and columns, each scan split into _BOUND_BANDS bands of lines
+    with the bound checked after every band. Penalties never decrease the
+    total, so once (partial total, mask_id) exceeds best = (best total, best
+    mask ID), the final total cannot win: it would be higher, or equal with a
+    higher mask ID, which the exhaustive search also rejects.
+
+    Returns:
+        Tuple[Optional[List[int]], int]: [rule1, rule2, rule3, rule4] and the total when the
+        mask beats best, otherwise None and the (partial) total at which it was abandoned
+    """
+    partial = rule4
+    if (partial, mask_id) > best:
+        return None, partial
+    penalties = [0, 0, 0, rule4]
+    row_light, column_light = rows ^ row_valid, columns ^ column_valid
+
+    for band, band_light in _board_bands(rows, row_light, height, width + 1, overlap=1):
+        penalty = _board_rule2(band, band_light, width + 1)
+        penalties[1] += penalty
+        partial += penalty
+        if (partial, mask_id) > best:
+            return None, partial
+
+    for rule, score_band in ((0, _board_rule1), (2, _board_rule3)):
+        for board, light, line_count, stride in ((rows, row_light, height, width + 1),
+                                                 (columns, column_light, width, height + 1)):
+            for band, band_light in _board_bands(board, light, line_count, stride):
+                penalty = score_band(band, band_light)
+                penalties[rule] += penalty
+                partial += penalty
+                if (partial, mask_id) > best:
+                    return None, partial
+    return penalties, partial
+
+
+def calculate_symbol_penalty_score(matrix: SymbolMatrix) -> Tuple[int, List[int]]:
+    """
+    Calculate the total penalty score of a masked symbol with the bitboard engine.
+
+    Gives the same result as calculate_total_penalty_score(matrix.to_rows()).
+    Reserved and empty modules count as light.
+
+    Args:
+        matrix: Masked symbol (square or rectangular)
+
+    Returns:
+        Tuple[int, List[int]]: Total penalty score and list of individual rule penalties
+    """
+    height, width = matrix.height, matrix.width
+    modules = matrix.modules()
+    rows = _pack_board(modules, height, width)
+    columns = _pack_board(_transpose_modules(modules, height, width), width, height)
+    return _board_penalty_score(rows, columns, height, width,
+                                _board_valid_bits(height, width), _board_valid_bits(width, height))
+
+
+# --- NumPy penalty engine ---
+# Scores symbols of at least NUMPY_ENGINE_MIN_SIZE modules on an 8 x height x width
+# stack holding the symbol under every mask, running each rule once over the whole
+# stack. It is off unless QR_NUMPY_MASKING=1 is set and numpy is installed; the
+# bitboard engine is used otherwise. tests/test_numpy_engine.py checks both engines
+# give the same scores, and benchmarks/mask_engines.py times them per version to
+# choose NUMPY_ENGINE_MIN_SIZE before the engine is enabled.
+
+NUMPY_ENGINE_ENABLED = os.environ.get("QR_NUMPY_MASKING", "0") == "1"
+
+NUMPY_ENGINE_MIN_SIZE = 57
+
+# Mask plane stacks per function bitmap, see _numpy_mask_planes
+_NUMPY_MASK_PLANES: Dict[Tuple[int, int, bytes], "np.ndarray"] = {}
+
+
+def _numpy_mask_planes(function_bits: bytes, height: int, width: int) -> "np.ndarray":
+    """Return the 8 mask planes (see get_mask_planes) as a cached 8 x height x width uint8 array."""
+    key = (height, width, function_bits)
+    planes = _NUMPY_MASK_PLANES.get(key)
+    if planes is None:
+        planes = np.frombuffer(b''.join(get_mask_planes(function_bits, height, width)),
+                               dtype=np.uint8).reshape(8, height, width)
+        _NUMPY_MASK_PLANES[key] = planes
+    return planes
+
+
+def _numpy_rule1(lines: "np.ndarray") -> List[int]:
+    """Rule 1 along the last axis of a masks x lines x length stack, one total per mask."""
+    masks, line_count, _ = lines.shape
+    edge = np.ones((masks, line_count, 1), dtype=bool)
+    # True before the first module, wherever the colour changes, and after the last module
+    boundaries = np.concatenate([edge, np.diff(lines, axis=2) != 0, edge], axis=2).reshape(masks, -1)
+    penalties = []
+    for mask_boundaries in boundaries:
+        # Gaps between boundaries are the run lengths (1 across each line end, never scored)
+        runs = np.diff(np.flatnonzero(mask_boundaries))
+        long_runs = runs[runs >= 5]
+        penalties.append(int(long_runs.sum()) - 2 * len(long_runs))
+    return penalties
+
+
+def _numpy_rule3(lines: "np.ndarray") -> "np.ndarray":
+    """Rule 3 along the last axis of a masks x lines x length stack, matches per mask."""
+    positions = lines.shape[2] - 10
+    if positions <= 0:
+        return np.zeros(lines.shape[0], dtype=np.int64)
+    # Slide an 11-module window as an 11-bit value (a correlation with powers of two)
+    windows = np.zeros(lines.shape[:2] + (positions,), dtype=np.uint16)
+    for offset in range(11):
+        windows = windows << 1 | lines[:, :, offset:offset + positions]
+    matches = (windows == _FINDER_LIKE_WINDOWS[0]) | (windows == _FINDER_LIKE_WINDOWS[1])
+    return matches.sum(axis=(1, 2))
+
+
+def _numpy_penalty_scores(modules: bytes, function_bits: bytes, height: int, width: int) -> List[List[int]]:
+    """
+    Score all 8 masks of a symbol at once.
+
+    Args:
+        modules: Row-major 0/1 module colours of the unmasked symbol
+        function_bits: Row-major function bitmap of the symbol
+        height: Number of rows
+        width: Number of columns
+
+    Returns:
+        List[List[int]]: [rule1, rule2, rule3, rule4] penalties for mask patterns 0-7
+    """
+    symbol = np.frombuffer(modules, dtype=np.uint8).reshape(height, width)
+    stack = _numpy_mask_planes(function_bits, height, width) ^ symbol  # 8 x height x width
+    columns = stack.transpose(0, 2, 1)
+
+    rule1 = [row + column for row, column in zip(_numpy_rule1(stack), _numpy_rule1(columns))]
+
+    corner = stack[:, :-1, :-1]
+    blocks = (corner == stack[:, 1:, :-1]) & (corner == stack[:, :-1, 1:]) & (corner == stack[:, 1:, 1:])
+    rule2 = blocks.sum(axis=(1, 2)) * 3
+
+    rule3 = (_numpy_rule3(stack) + _numpy_rule3(columns)) * 40
+
+    dark = stack.sum(axis=(1, 2))
+    scores = []
+    for mask_id in range(8):
+        # Rule 4 exactly as _calculate_penalty_rule4
+        percent_dark = (int(dark[mask_id]) / (height * width)) * 100.0
+        rule4 = math.floor(abs(percent_dark - 50) / 5) * 10
+        scores.append([rule1[mask_id], int(rule2[mask_id]), int(rule3[mask_id]), rule4])
+    return scores
+
+
 def find_best_pattern(
         base_qr_matrix_with_placeholders: QRMatrixWithPlaceholders,
         function_map: List[List[bool]]
@@ -419,65 +704,134 @@ def find_best_pattern(
     """
     Evaluate all mask patterns and select the one with lowest penalty score.
 
-    This function applies each of the 8 mask patterns to the QR matrix,
-    calculates penalty scores, and returns the optimal masked matrix.
-    Reserved ('R') cells are treated as light (0) modules for penalty calculation.
+    This function scores the 8 mask patterns with the bitboard engine (one XOR
+    of the symbol's boards per mask, see _mask_boards), or with the numpy engine
+    for symbols of NUMPY_ENGINE_MIN_SIZE modules and up when NUMPY_ENGINE_ENABLED is set,
+    and applies only the winning mask to the matrix. The masks come from the
+    matrix's function bitmap, which must match function_map. Reserved cells are
+    treated as light (0) modules for penalty calculation.
+
+    The bitboard search is a branch and bound: Rule 4 (a popcount) is computed
+    for every mask and orders the search, and each mask is abandoned as soon as
+    its partial penalty shows it cannot win (see _board_penalty_bounded). The
+    selected mask is the one the exhaustive search picks: the lowest total, ties
+    going to the lowest mask ID.
 
     Args:
-        base_qr_matrix_with_placeholders: QR matrix with data and 'R' placeholders
+        base_qr_matrix_with_placeholders: QR matrix with data and reserved format areas
         function_map: Boolean matrix marking function pattern locations
 
     Returns:
         Tuple containing:
-        - QRMatrixWithPlaceholders: Best masked matrix (still containing 'R' placeholders)
+        - QRMatrixWithPlaceholders: Best masked matrix (format areas still reserved)
         - int: ID of the best mask pattern (0-7)
     """
     best_score = float('inf')
-    best_mask_id = -1
-    best_actually_masked_matrix = None
-
-    # Create integer-only matrix for penalty evaluation
-    # 'R' and other placeholders become 0 (light) for scoring
-    eval_matrix_base = []
-    for r_list_placeholders in base_qr_matrix_with_placeholders:
-        new_row = [val if isinstance(val, int) else 0 for val in r_list_placeholders]
-        eval_matrix_base.append(new_row)
-
-    print("\nDEBUG matrix_masking: Evaluating all 8 mask patterns (reserved areas treated as '0' for scoring):")
-
-    # Test each mask pattern
-    for p_id in range(8):
-        # Apply mask to integer matrix for scoring
-        current_masked_for_eval_scoring = apply_specific_mask_pattern(
-            p_id,
-            [row[:] for row in eval_matrix_base],  # Deep copy
-            function_map
-        )
-
-        # Calculate penalty score
-        score, penalties_list = calculate_total_penalty_score(current_masked_for_eval_scoring, p_id)
-        print(f"  Mask {p_id}: P1={penalties_list[0]}, P2={penalties_list[1]}, "
-              f"P3={penalties_list[2]}, P4={penalties_list[3]} => Total: {score}")
-
-        # Track best score and corresponding mask
-        if score < best_score:
+    best_mask_id = 8  # Above every mask ID, so any first score wins
+
+    # Reserved modules become 0 (light) for scoring
+    height, width = base_qr_matrix_with_placeholders.height, base_qr_matrix_with_placeholders.width
+    if len(function_map) != height or len(function_map[0]) != width:
+        raise ValueError("Dimension mismatch between matrix and function_map.")
+    modules = base_qr_matrix_with_placeholders.modules()
+    function_bits = base_qr_matrix_with_placeholders.function_bits
+
+    logger.debug("Evaluating all 8 mask patterns (reserved areas treated as '0' for scoring):")
+
+    if NUMPY_ENGINE_ENABLED and np is not None and min(height, width) >= NUMPY_ENGINE_MIN_SIZE:
+        # All 8 masks are scored together, so there is nothing to prune
+        for p_id, penalties_list in enumerate(_numpy_penalty_scores(modules, function_bits, height, width)):
+            score = sum(penalties_list)
+            logger.debug("  Mask %d: P1=%d, P2=%d, P3=%d, P4=%d => Total: %d", p_id, *penalties_list, score)
+
+            # Track best score and corresponding mask
+            if score < best_score:
+                best_score = score
+                best_mask_id = p_id
+    else:
+        base_rows = _pack_board(modules, height, width)
+        base_columns = _pack_board(_transpose_modules(modules, height, width), width, height)
+        row_valid, column_valid = _board_valid_bits(height, width), _board_valid_bits(width, height)
+        mask_boards = _mask_boards(function_bits, height, width)
+
+        # Apply each mask to the row board; Rule 4 orders the search, lowest penalty first
+        masked_rows = [base_rows ^ mask_rows for mask_rows, _ in mask_boards]
+        rule4_scores = [_board_rule4(rows, height, width) for rows in masked_rows]
+
+        for p_id in sorted(range(8), key=rule4_scores.__getitem__):
+            penalties_list, score = _board_penalty_bounded(
+                masked_rows[p_id], base_columns ^ mask_boards[p_id][1], height, width, row_valid, column_valid,
+                rule4_scores[p_id], p_id, (best_score, best_mask_id))
+            if penalties_list is None:
+                logger.debug("Mask %d: abandoned at %d (best so far: Mask %d => %s)",
+                             p_id, score, best_mask_id, best_score)
+                continue
+            logger.debug("  Mask %d: P1=%d, P2=%d, P3=%d, P4=%d => Total: %d", p_id, *penalties_list, score)
+
+            # Not abandoned, so (score, p_id) beats the best so far
             best_score = score
             best_mask_id = p_id
-            # Apply mask to original matrix (preserving 'R' placeholders)
-            best_actually_masked_matrix = apply_specific_mask_pattern(
-                p_id,
-                [row[:] for row in base_qr_matrix_with_placeholders],
-                function_map
-            )
-
-    # Fallback to mask 0 if no best found (shouldn't happen)
-    if best_actually_masked_matrix is None:
-        print("Warning: Defaulting to mask 0 as no score improvement was found. Initial matrix may have issues.")
-        best_mask_id = 0
-        best_actually_masked_matrix = apply_specific_mask_pattern(
-            0, [row[:] for row in base_qr_matrix_with_placeholders], function_map
-        )
-
-    print(f"DEBUG matrix_masking: Selected Mask ID: {best_mask_id} with Best Penalty Score: {best_score}")
+
+    # Apply the winning mask to the original matrix (preserving reserved modules)
+    best_actually_masked_matrix = apply_specific_mask_pattern(best_mask_id, base_qr_matrix_with_placeholders,
+                                                              function_map)
+
+    logger.debug("Selected Mask ID: %d with Best Penalty Score: %d", best_mask_id, best_score)
 
     return best_actually_masked_matrix, best_mask_id
+
+
+def find_best_micro_pattern(
+        base_qr_matrix_with_placeholders: QRMatrixWithPlaceholders,
+        function_map: List[List[bool]]
+) -> Tuple[QRMatrixWithPlaceholders, int]:
+    """
+    Evaluate the 4 Micro QR mask patterns and select the one with the highest score.
+
+    Args:
+        base_qr_matrix_with_placeholders: Micro QR matrix with data and reserved format areas
+        function_map: Boolean matrix marking function pattern locations
+
+    Returns:
+        Tuple containing:
+        - QRMatrixWithPlaceholders: Best masked matrix (format areas still reserved)
+        - int: Micro QR mask pattern ID (0-3), as written to the format information
+    """
+    best_score = -1
+    best_mask_id = 0
+    best_masked_matrix = None
+
+    logger.debug("Evaluating the 4 Micro QR mask patterns:")
+
+    for micro_id, p_id in enumerate(MICRO_MASK_PATTERNS):
+        masked = apply_specific_mask_pattern(p_id, base_qr_matrix_with_placeholders, function_map)
+        score = calculate_micro_mask_score(masked.to_rows())
+        logger.debug("  Micro Mask %d (QR pattern %d) => Score: %d", micro_id, p_id, score)
+
+        if score > best_score:
+            best_score = score
+            best_mask_id = micro_id
+            best_masked_matrix = masked
+
+    logger.debug("Selected Micro Mask ID: %d with Best Score: %d", best_mask_id, best_score)
+
+    return best_masked_matrix, best_mask_id
+
+
+def apply_rmqr_mask(
+        base_qr_matrix_with_placeholders: QRMatrixWithPlaceholders,
+        function_map: List[List[bool]]
+) -> QRMatrixWithPlaceholders:
+    """
+    Apply the fixed rMQR mask pattern.
+
+    rMQR has no mask selection, so no penalty score is computed.
+
+    Args:
+        base_qr_matrix_with_placeholders: rMQR matrix with data and reserved format areas
+        function_map: Boolean matrix marking function pattern locations
+
+    Returns:
+        QRMatrixWithPlaceholders: Masked matrix (format areas still reserved)
+    """
+    return apply_specific_mask_pattern(RMQR_MASK_PATTERN, base_qr_matrix_with_placeholders, function_map)
@@ -0,0 +1,248 @@
+"""
+QR Code Capacity Tables Module
+
+This module holds the per-version capacity tables from ISO/IEC 18004:2015
+(Table 1 and Table 9) for QR code Versions 1 to 40, together with lookups
+derived from them once at import time.
+
+Key Features:
+- Total codewords and remainder bits for every version
+- Error correction codewords per block and number of blocks for each EC level
+- Precomputed data codeword counts and block group structure per version
+- Data capacity in bits, used for smallest-version selection
+- Micro QR (M1-M4) codeword counts and data capacities
+- Rectangular Micro QR (rMQR, ISO/IEC 23941) sizes and block structures
+
+All tuples are indexed directly by version number; index 0 is unused.
+"""
+
+from typing import Dict, List, Tuple
+
+MIN_VERSION = 1
+MAX_VERSION = 40
+
+# Error correction levels, from lowest (~7% recovery) to highest (~30% recovery)
+ECC_LEVELS = ('L', 'M', 'Q', 'H')
+
+# Total number of codewords (data + ECC) in each version, independent of EC level
+TOTAL_CODEWORDS = (
+    None,
+    26, 44, 70, 100, 134, 172, 196, 242, 292, 346,
+    404, 466, 532, 581, 655, 733, 815, 901, 991, 1085,
+    1156, 1258, 1364, 1474, 1588, 1706, 1828, 1921, 2051, 2185,
+    2323, 2465, 2611, 2761, 2876, 3034, 3196, 3362, 3532, 3706,
+)
+
+# Remainder bits left over after the last codeword has been placed in the matrix
+REMAINDER_BITS = (
+    None,
+    0, 7, 7, 7, 7, 7, 0, 0, 0, 0,
+    0, 0, 0, 3, 3, 3, 3, 3, 3, 3,
+    4, 4, 4, 4, 4, 4, 4, 3, 3, 3,
+    3, 3, 3, 3, 0, 0, 0, 0, 0, 0,
+)
+
+# Error correction codewords in every block, per EC level
+ECC_CODEWORDS_PER_BLOCK = {
+    'L': (
+        None,
+        7, 10, 15, 20, 26, 18, 20, 24, 30, 18,
+        20, 24, 26, 30, 22, 24, 28, 30, 28, 28,
+        28, 28, 30, 30, 26, 28, 30, 30, 30, 30,
+        30, 30, 30, 30, 30, 30, 30, 30, 30, 30,
+    ),
+    'M': (
+        None,
+        10, 16, 26, 18, 24, 16, 18, 22, 22, 26,
+        30, 22, 22, 24, 24, 28, 28, 26, 26, 26,
+        26, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+        28, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+    ),
+    'Q': (
+        None,
+        13, 22, 18, 26, 18, 24, 18, 22, 20, 24,
+        28, 26, 24, 20, 30, 24, 28, 28, 26, 30,
+        28, 30, 30, 30, 30, 28, 30, 30, 30, 30,
+        30, 30, 30, 30, 30, 30, 30, 30, 30, 30,
+    ),
+    'H': (
+        None,
+        17, 28, 22, 16, 22, 28, 26, 26, 24, 28,
+        24, 28, 22, 24, 24, 30, 28, 28, 26, 28,
+        30, 24, 30, 30, 30, 30, 30, 30, 30, 30,
+        30, 30, 30, 30, 30, 30, 30, 30, 30, 30,
+    ),
+}
+
+# Number of error correction blocks the codewords are split into, per EC level
+NUM_ERROR_CORRECTION_BLOCKS = {
+    'L': (
+        None,
+        1, 1, 1, 1, 1, 2, 2, 2, 2, 4,
+        4, 4, 4, 4, 6, 6, 6, 6, 7, 8,
+        8, 9, 9, 10, 12, 12, 12, 13, 14, 15,
+        16, 17, 18, 19, 19, 20, 21, 22, 24, 25,
+    ),
+    'M': (
+        None,
+        1, 1, 1, 2, 2, 4, 4, 4, 5, 5,
+        5, 8, 9, 9, 10, 10, 11, 13, 14, 16,
+        17, 17, 18, 20, 21, 23, 25, 26, 28, 29,
+        31, 33, 35, 37, 38, 40, 43, 45, 47, 49,
+    ),
+    'Q': (
+        None,
+        1, 1, 2, 2, 4, 4, 6, 6, 8, 8,
+        8, 10, 12, 16, 12, 17, 16, 18, 21, 20,
+        23, 23, 25, 27, 29, 34, 34, 35, 38, 40,
+        43, 45, 48, 51, 53, 56, 59, 62, 65, 68,
+    ),
+    'H': (
+        None,
+        1, 1, 2, 4, 4, 4, 5, 6, 8, 8,
+        11, 11, 16, 16, 18, 16, 19, 21, 25, 25,
+        25, 34, 30, 32, 35, 37, 40, 42, 45, 48,
+        51, 54, 57, 60, 63, 66, 70, 74, 77, 81,
+    ),
+}
+
+# One group of blocks: (number of blocks, data codewords in each block)
+BlockGroup = Tuple[int, int]
+
+
+def _build_block_groups(version: int, ecc_level: str) -> Tuple[BlockGroup, ...]:
+    """
+    Derive the block groups for a version and EC level.
+
+    Codewords are divided as evenly as possible between the blocks. When the
+    division is uneven, the blocks of group 2 hold one more data codeword than
+    the blocks of group 1.
+
+    Args:
+        version: QR code version (1-40)
+        ecc_level: Error correction level ('L', 'M', 'Q' or 'H')
+
+    Returns:
+        Tuple[BlockGroup, ...]: One or two (block count, data codewords) groups
+    """
+    num_blocks = NUM_ERROR_CORRECTION_BLOCKS[ecc_level][version]
+    ecc_per_block = ECC_CODEWORDS_PER_BLOCK[ecc_level][version]
+    total = TOTAL_CODEWORDS[version]
+
+    num_long_blocks = total % num_blocks
+    short_block_data = total // num_blocks - ecc_per_block
+
+    groups = [(num_blocks - num_long_blocks, short_block_data)]
+    if num_long_blocks:
+        groups.append((num_long_blocks, short_block_data + 1))
+    return tuple(groups)
+
+
+# Precomputed block groups, data codewords and data capacity in bits per EC level and version
+BLOCK_GROUPS: Dict[str, Tuple[Tuple[BlockGroup, ...], ...]] = {}
+DATA_CODEWORDS: Dict[str, Tuple[int, ...]] = {}
+DATA_CAPACITY_BITS: Dict[str, Tuple[int, ...]] = {}
+
+for _level in ECC_CODEWORDS_PER_BLOCK:
+    _groups: List = [None]
+    _data: List = [None]
+    for _version in range(MIN_VERSION, MAX_VERSION + 1):
+        _groups.append(_build_block_groups(_version, _level))
+        _data.append(TOTAL_CODEWORDS[_version]
+                     - ECC_CODEWORDS_PER_BLOCK[_level][_version] * NUM_ERROR_CORRECTION_BLOCKS[_level][_version])
+    BLOCK_GROUPS[_level] = tuple(_groups)
+    DATA_CODEWORDS[_level] = tuple(_data)
+    DATA_CAPACITY_BITS[_level] = tuple(None if count is None else count * 8 for count in _data)
+
+del _level, _groups, _data, _version
+
+
+# Micro QR symbols M1 to M4 (ISO/IEC 18004:2015 Table 7 and Table 9), indexed by
+# Micro QR version number; index 0 is unused. Each symbol is a single RS block.
+MICRO_VERSIONS = (1, 2, 3, 4)
+
+# Total number of codewords in each Micro QR symbol. In M1 and M3 the last data
+# codeword is only 4 bits long.
+MICRO_TOTAL_CODEWORDS = (None, 5, 10, 17, 24)
+
+# Data capacity in bits per EC level (None where the level is not defined).
+# M1 only offers error detection; it is listed under Level L.
+MICRO_DATA_CAPACITY_BITS: Dict[str, Tuple[int, ...]] = {
+    'L': (None, 20, 40, 84, 128),
+    'M': (None, None, 32, 68, 112),
+    'Q': (None, None, None, None, 80),
+}
+
+# Data codewords (a 4-bit final codeword counts as one) and ECC codewords per symbol
+MICRO_DATA_CODEWORDS: Dict[str, Tuple[int, ...]] = {
+    level: tuple(None if bits is None else (bits + 7) // 8 for bits in capacity)
+    for level, capacity in MICRO_DATA_CAPACITY_BITS.items()
+}
+MICRO_ECC_CODEWORDS: Dict[str, Tuple[int, ...]] = {
+    level: tuple(None if count is None else MICRO_TOTAL_CODEWORDS[version] - count
+                 for version, count in enumerate(data))
+    for level, data in MICRO_DATA_CODEWORDS.items()
+}
+
+# 3-bit symbol number carried in the Micro QR format information
+MICRO_SYMBOL_NUMBERS = {
+    (1, 'L'): 0, (2, 'L'): 1, (2, 'M'): 2, (3, 'L'): 3,
+    (3, 'M'): 4, (4, 'L'): 5, (4, 'M'): 6, (4, 'Q'): 7,
+}
+
+
+# rMQR symbol sizes (height, width), indexed by the 5-bit version indicator
+# written to the format information: R7x43 is 0, R17x139 is 31.
+RMQR_SIZES = (
+    (7, 43), (7, 59), (7, 77), (7, 99), (7, 139),
+    (9, 43), (9, 59), (9, 77), (9, 99), (9, 139),
+    (11, 27), (11, 43), (11, 59), (11, 77), (11, 99), (11, 139),
+    (13, 27), (13, 43), (13, 59), (13, 77), (13, 99), (13, 139),
+    (15, 43), (15, 59), (15, 77), (15, 99), (15, 139),
+    (17, 43), (17, 59), (17, 77), (17, 99), (17, 139),
+)
+
+# rMQR error correction codewords per block and number of blocks (ISO/IEC 23941
+# Table 8), indexed by version indicator. rMQR defines Levels M and H only.
+RMQR_ECC_CODEWORDS_PER_BLOCK: Dict[str, Tuple[int, ...]] = {
+    'M': (7, 9, 12, 16, 24, 9, 12, 18, 24, 18, 8, 12, 16, 24, 16, 24,
+          9, 14, 22, 16, 20, 20, 18, 26, 18, 24, 24, 22, 16, 22, 20, 20),
+    'H': (10, 14, 22, 30, 22, 14, 22, 16, 22, 22, 10, 20, 16, 22, 30, 30,
+          14, 28, 20, 28, 26, 28, 18, 24, 24, 22, 26, 20, 30, 28, 26, 26),
+}
+RMQR_NUM_ERROR_CORRECTION_BLOCKS: Dict[str, Tuple[int, ...]] = {
+    'M': (1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 1, 1, 1, 1, 2, 2,
+          1, 1, 1, 2, 2, 3, 1, 1, 2, 2, 3, 1, 2, 2, 3, 4),
+    'H': (1, 1, 1, 1, 2, 1, 1, 2, 2, 3, 1, 1, 2, 2, 2, 3,
+          1, 1, 2, 2, 3, 4, 2, 2, 3, 4, 5, 2, 2, 3, 4, 6),
+}
+
+# Total codewords and remainder bits of each rMQR symbol
+RMQR_TOTAL_CODEWORDS = (
+    13, 21, 32, 44, 68, 21, 33, 49, 66, 99, 15, 31, 47, 67, 89, 132,
+    21, 41, 60, 85, 113, 166, 51, 74, 103, 136, 199, 61, 88, 122, 160, 232,
+)
+RMQR_REMAINDER_BITS = (
+    0, 3, 5, 6, 1, 2, 3, 1, 4, 5, 2, 1, 0, 2, 7, 6,
+    4, 1, 6, 4, 3, 0, 1, 4, 6, 7, 2, 1, 2, 0, 3, 4,
+)
+
+RMQR_BLOCK_GROUPS: Dict[str, Tuple[Tuple[BlockGroup, ...], ...]] = {}
+RMQR_DATA_CODEWORDS: Dict[str, Tuple[int, ...]] = {}
+
+for _level in RMQR_ECC_CODEWORDS_PER_BLOCK:
+    _groups = []
+    _data = []
+    for _index, _total in enumerate(RMQR_TOTAL_CODEWORDS):
+        _num_blocks = RMQR_NUM_ERROR_CORRECTION_BLOCKS[_level][_index]
+        _ecc_per_block = RMQR_ECC_CODEWORDS_PER_BLOCK[_level][_index]
+        _short_data = _total // _num_blocks - _ecc_per_block
+        _group = [(_num_blocks - _total % _num_blocks, _short_data)]
+        if _total % _num_blocks:
+            _group.append((_total % _num_blocks, _short_data + 1))
+        _groups.append(tuple(_group))
+        _data.append(_total - _ecc_per_block * _num_blocks)
+    RMQR_BLOCK_GROUPS[_level] = tuple(_groups)
+    RMQR_DATA_CODEWORDS[_level] = tuple(_data)
+
+del _level, _groups, _data, _index, _total, _num_blocks, _ecc_per_block, _short_data, _group
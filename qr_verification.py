@@ -0,0 +1,129 @@
+"""
+QR Code Verification Module
+
+Author: Zain Alshammari
+
+This module reads a finished QR matrix back into data codewords, the way a
+scanner would, and checks them against the codewords it was generated from.
+It lets the application verify every symbol it produces without a phone.
+
+Key Features:
+- Format information decoding (error correction level and mask pattern)
+- Codeword extraction by reversing masking and the zigzag placement
+- Reed-Solomon correction of the extracted blocks
+- Process-wide counters of verified and failed symbols, safe to update from server threads
+
+A freshly generated symbol must read back exactly: a symbol that needs any
+correction, or decodes to different data, counts as a failure.
+
+The read-back does not reuse the generator's shortcuts: the function map is
+derived from the symbol geometry rather than taken from the version template,
+the zigzag order is walked afresh over that map, and modules are unmasked with
+the mask condition predicates rather than the cached mask planes. A fault in
+any of those caches therefore shows up as a failure instead of round-tripping.
+Failure reasons are logged as warnings on this module's logger.
+"""
+
+import logging
+import threading
+from typing import Dict, List
+
+from error_correction import correct_final_codewords
+from matrix_layout import ALIGNMENT_PATTERN_COORDS_LOOKUP, get_size_from_version, read_codewords, read_format_information
+from matrix_masking import MASK_CONDITION_FUNCTIONS
+from qr_tables import TOTAL_CODEWORDS
+
+logger = logging.getLogger(__name__)
+
+# Symbols checked by verify_qr_matrix since start-up, see record_verification.
+# Updated and read under _COUNTS_LOCK; use get_verification_counts for a consistent copy.
+VERIFICATION_COUNTS: Dict[str, int] = {"verified": 0, "failed": 0}
+_COUNTS_LOCK = threading.Lock()
+
+
+def _build_function_map(version: int) -> List[List[bool]]:
+    """
+    Mark the function modules of a QR version from its geometry alone.
+
+    Finder patterns with their separators and format areas, the timing row and
+    column, the alignment patterns and the version areas are marked directly
+    from their positions, independently of the pattern placement functions.
+
+    Args:
+        version (int): QR code version (1-40)
+
+    Returns:
+        List[List[bool]]: size x size map where True marks a function module
+    """
+    size = get_size_from_version(version)
+    function_map = [[False] * size for _ in range(size)]
+    for r in range(size):
+        for c in range(size):
+            function_map[r][c] = (
+                (r < 9 and c < 9)  # Top-left finder, separator and format areas
+                or (r < 9 and c >= size - 8)  # Top-right finder, separator and format area
+                or (r >= size - 8 and c < 9)  # Bottom-left finder, separator, format area and dark module
+                or r == 6 or c == 6  # Timing patterns
+                or (version >= 7 and ((r < 6 and size - 11 <= c < size - 8)
+                                      or (c < 6 and size - 11 <= r < size - 8)))  # Version information
+            )
+
+    centres = ALIGNMENT_PATTERN_COORDS_LOOKUP.get(version, []) if version >= 2 else []
+    last = centres[-1] if centres else None
+    for centre_r in centres:
+        for centre_c in centres:
+            if (centre_r, centre_c) in ((6, 6), (6, last), (last, 6)):
+                continue  # Would overlap a finder pattern
+            for r in range(centre_r - 2, centre_r + 3):
+                for c in range(centre_c - 2, centre_c + 3):
+                    function_map[r][c] = True
+    return function_map
+
+
+def verify_qr_matrix(matrix, version: int, ecc_level: str, data_codewords: bytes) -> bool:
+    """
+    Check that a finished QR matrix decodes to the expected data codewords.
+
+    Args:
+        matrix: Final symbol, or list of rows of 0s and 1s
+        version (int): QR code version the symbol was built for (1-40)
+        ecc_level (str): Error correction level the symbol was built with
+        data_codewords (bytes): Data codewords the symbol was generated from
+
+    Returns:
+        bool: True if the format information and every codeword read back exactly.
+    """
+    try:
+        read_level, mask = read_format_information(matrix)
+        if read_level != ecc_level:
+            logger.warning("Verification failed: format information says Level %s, expected %s",
+                           read_level, ecc_level)
+            return False
+
+        # The zigzag order is derived from the fresh map and each data module is unmasked by the mask condition
+        codewords = read_codewords(matrix, _build_function_map(version), TOTAL_CODEWORDS[version],
+                                   mask_condition=MASK_CONDITION_FUNCTIONS[mask])
+        decoded, corrected = correct_final_codewords(codewords, version, ecc_level)
+    except ValueError as e:
+        logger.warning("Verification failed: %s", e)
+        return False
+
+    if corrected:
+        logger.warning("Verification failed: %d codeword(s) needed correction", corrected)
+        return False
+    if decoded != bytes(data_codewords):
+        logger.warning("Verification failed: decoded data codewords differ from the encoded ones")
+        return False
+    return True
+
+
+def record_verification(passed: bool) -> None:
+    """Count one verified or failed symbol in VERIFICATION_COUNTS (thread-safe)."""
+    with _COUNTS_LOCK:
+        VERIFICATION_COUNTS["verified" if passed else "failed"] += 1
+
+
+def get_verification_counts() -> Dict[str, int]:
+    """Return a consistent copy of VERIFICATION_COUNTS (thread-safe)."""
+    with _COUNTS_LOCK:
+        return dict(VERIFICATION_COUNTS)
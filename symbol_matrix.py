@@ -0,0 +1,137 @@
+"""
+QR Code Symbol Matrix Module
+
+This module provides the compact matrix that carries a symbol through module
+placement, masking and format placement, instead of a list of lists holding
+Python ints, the string 'R' and None.
+
+Key Features:
+- Modules stored row-major in a flat bytearray, one byte per module
+- Small state codes: LIGHT (0), DARK (1), RESERVED (2, format areas) and EMPTY (3)
+- A separate function bitmap (1 = function pattern) shared by every copy of a symbol
+- Copies are a single bytearray copy; rows are writable memoryviews, so
+  matrix[r][c] reads and writes still work for callers that index by row
+- Light/dark conversion of every module in one bytes.translate call
+"""
+
+from typing import Iterator, List, Optional, Sequence, Union
+
+# Module state codes
+LIGHT = 0
+DARK = 1
+RESERVED = 2  # Format information area, written after masking
+EMPTY = 3  # Not yet filled with data
+
+# bytes.translate table mapping each state code to the colour it is rendered and scored as
+_MODULE_COLOURS = bytes([LIGHT, DARK, LIGHT, LIGHT]) + bytes(252)
+
+
+class SymbolMatrix:
+    """
+    Height x width grid of module state codes with its function bitmap.
+
+    The bitmap is immutable and shared between copies; only the module states
+    are copied.
+    """
+
+    __slots__ = ("height", "width", "cells", "function_bits")
+
+    def __init__(self, height: int, width: int, cells: Optional[bytes] = None,
+                 function_bits: Optional[bytes] = None) -> None:
+        """
+        Create a matrix, empty unless module states are given.
+
+        Args:
+            height: Number of rows
+            width: Number of columns
+            cells: Row-major module states to copy (height * width bytes), or None for all EMPTY
+            function_bits: Row-major function bitmap (1 = function pattern), or None for none
+
+        Raises:
+            ValueError: If cells or function_bits do not hold height * width modules
+        """
+        count = height * width
+        self.height = height
+        self.width = width
+        self.cells = bytearray([EMPTY]) * count if cells is None else bytearray(cells)
+        self.function_bits = bytes(count) if function_bits is None else bytes(function_bits)
+        if len(self.cells) != count or len(self.function_bits) != count:
+            raise ValueError(f"Expected {count} modules for a {height}x{width} matrix.")
+
+    @classmethod
+    def from_rows(cls, rows: Sequence[Sequence[Union[int, str, None]]]) -> "SymbolMatrix":
+        """
+        Convert a list-of-rows matrix (0, 1, 'R' or None cells) into a SymbolMatrix.
+
+        Every cell that is not None is taken to be a function pattern module,
+        which is how the pattern placement functions leave a matrix before data
+        is placed.
+
+        Args:
+            rows: Matrix rows of 0, 1, 'R' (reserved) or None (empty)
+
+        Returns:
+            SymbolMatrix: Matrix with the same states and the derived function bitmap
+        """
+        codes = {None: EMPTY, 'R': RESERVED, 0: LIGHT, 1: DARK}
+        cells = bytes(codes[cell] for row in rows for cell in row)
+        function_bits = bytes(cell != EMPTY for cell in cells)
+        return cls(len(rows), len(rows[0]), cells, function_bits)
+
+    def copy(self) -> "SymbolMatrix":
+        """Return a copy with its own module states and the same (shared) function bitmap."""
+        matrix = SymbolMatrix.__new__(SymbolMatrix)
+        matrix.height = self.height
+        matrix.width = self.width
+        matrix.cells = self.cells[:]
+        matrix.function_bits = self.function_bits
+        return matrix
+
+    def __len__(self) -> int:
+        """Return the number of rows."""
+        return self.height
+
+    def __getitem__(self, row: int) -> memoryview:
+        """Return a writable view of one row of module states."""
+        if not -self.height <= row < self.height:
+            raise IndexError(f"Row {row} out of range for a matrix of {self.height} rows.")
+        start = (row % self.height) * self.width
+        return memoryview(self.cells)[start:start + self.width]
+
+    def __iter__(self) -> Iterator[memoryview]:
+        """Yield a view of every row, top to bottom."""
+        view = memoryview(self.cells)
+        for start in range(0, len(self.cells), self.width):
+            yield view[start:start + self.width]
+
+    def __eq__(self, other: object) -> bool:
+        """Matrices are equal when their sizes and module states are."""
+        if not isinstance(other, SymbolMatrix):
+            return NotImplemented
+        return (self.height, self.width, self.cells) == (other.height, other.width, other.cells)
+
+    def modules(self) -> bytes:
+        """
+        Return the colour of every module, row-major.
+
+        Returns:
+            bytes: 1 for dark and 0 for light modules; reserved and empty modules read as light
+        """
+        return self.cells.translate(_MODULE_COLOURS)
+
+    def to_modules(self) -> "SymbolMatrix":
+        """Return a copy in which reserved and empty modules have become light."""
+        matrix = self.copy()
+        matrix.cells = bytearray(self.modules())
+        return matrix
+
+    def to_rows(self) -> List[List[int]]:
+        """
+        Return the module colours as a list of rows of 0s and 1s.
+
+        Returns:
+            List[List[int]]: height lists of width ints (see modules)
+        """
+        colours = self.modules()
+        width = self.width
+        return [list(colours[start:start + width]) for start in range(0, len(colours), width)]
@@ -0,0 +1,82 @@
+"""
+Bit Buffer Tests
+
+Checks BitBuffer against a plain string of '0' and '1' characters, the
+representation it replaced, for aligned and unaligned appends.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import os
+import random
+import sys
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+from bit_buffer import BitBuffer  # noqa: E402
+
+
+def _bits_to_bytes(bits: str) -> bytes:
+    """Pack a '0'/'1' string MSB-first, zero padding the last byte."""
+    bits += '0' * (-len(bits) % 8)
+    return bytes(int(bits[index:index + 8], 2) for index in range(0, len(bits), 8))
+
+
+class BitBufferTest(unittest.TestCase):
+    """BitBuffer packs bits exactly as the bit strings did."""
+
+    def test_unaligned_appends_match_bit_string(self):
+        rng = random.Random(1)
+        for _ in range(200):
+            buffer = BitBuffer(rng.choice([0, 16, 1000]))
+            expected = ''
+            for _ in range(rng.randint(0, 40)):
+                if rng.random() < 0.3:
+                    values = bytes(rng.getrandbits(8) for _ in range(rng.randint(0, 5)))
+                    buffer.append_bytes(values)
+                    expected += ''.join(format(byte, '08b') for byte in values)
+                else:
+                    count = rng.randint(0, 19)
+                    value = rng.getrandbits(count) if count else 0
+                    buffer.append_bits(value, count)
+                    expected += format(value, f'0{count}b') if count else ''
+            self.assertEqual(len(buffer), len(expected))
+            self.assertEqual(''.join(map(str, buffer)), expected)
+            self.assertEqual(buffer.to_bytes(), _bits_to_bytes(expected))
+            self.assertEqual(bytes(buffer.byte_view()), _bits_to_bytes(expected))
+
+    def test_known_answer(self):
+        buffer = BitBuffer()
+        buffer.append_bits(0b0100, 4)  # Byte mode
+        buffer.append_bits(2, 8)  # Count
+        buffer.append_bytes(b'Hi')
+        self.assertEqual(buffer.to_bytes(), bytes([0x40, 0x24, 0x86, 0x90]))
+        self.assertEqual(len(buffer), 28)
+
+    def test_pad_to_byte(self):
+        buffer = BitBuffer()
+        buffer.append_bits(0b101, 3)
+        buffer.pad_to_byte()
+        self.assertEqual(len(buffer), 8)
+        self.assertEqual(buffer.to_bytes(), b'\xa0')
+        buffer.pad_to_byte()  # Already aligned: no change
+        self.assertEqual(len(buffer), 8)
+
+    def test_from_bytes_and_get_bit(self):
+        buffer = BitBuffer.from_bytes(b'\x80\x01')
+        self.assertEqual(len(buffer), 16)
+        self.assertEqual([buffer.get_bit(index) for index in (0, 1, 14, 15)], [1, 0, 0, 1])
+        with self.assertRaises(IndexError):
+            buffer.get_bit(16)
+
+    def test_value_must_fit(self):
+        buffer = BitBuffer()
+        with self.assertRaises(ValueError):
+            buffer.append_bits(8, 3)
+        with self.assertRaises(ValueError):
+            buffer.append_bits(-1, 4)
+
+
+if __name__ == '__main__':
+    unittest.main()
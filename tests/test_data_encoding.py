@@ -0,0 +1,304 @@
+"""
+Data Encoding Tests
+
+Checks capacities, version selection and segmentation against ISO/IEC 18004
+and the bitstreams produced by the data encoding stage.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import io
+import itertools
+import os
+import random
+import sys
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import data_encoding  # noqa: E402
+from bit_buffer import BitBuffer  # noqa: E402
+from qr_tables import DATA_CODEWORDS  # noqa: E402
+
+
+class CapacityTest(unittest.TestCase):
+    """Capacities and version selection follow ISO/IEC 18004 Table 7."""
+
+    def test_byte_mode_capacity_known_answers(self):
+        capacity = data_encoding.BYTE_MODE_CAPACITY['L']
+        self.assertEqual((capacity[0], capacity[9], capacity[39]), (17, 271, 2953))
+        self.assertEqual(DATA_CODEWORDS['L'][1], 19)
+        self.assertEqual(DATA_CODEWORDS['L'][40], 2956)
+
+    def test_select_byte_mode_version(self):
+        self.assertEqual(data_encoding.select_byte_mode_version(17), 1)
+        self.assertEqual(data_encoding.select_byte_mode_version(18), 2)
+        self.assertEqual(data_encoding.select_byte_mode_version(2953), 40)
+        with self.assertRaises(ValueError):
+            data_encoding.select_byte_mode_version(2954)
+
+    def test_byte_mode_fills_selected_version(self):
+        for length in (1, 17, 18, 271, 272, 1000, 2953):
+            bit_stream, version = data_encoding.encode_byte_mode('a' * length)
+            self.assertEqual(version, data_encoding.select_byte_mode_version(length))
+            self.assertEqual(len(bit_stream), DATA_CODEWORDS['L'][version] * 8)
+
+    def test_sixteen_bit_count_from_version_10(self):
+        self.assertEqual(data_encoding.get_byte_mode_count_bits(9), 8)
+        self.assertEqual(data_encoding.get_byte_mode_count_bits(10), 16)
+        bit_stream, version = data_encoding.encode_byte_mode('a' * 272)
+        self.assertEqual(version, 11)
+        # 0100 mode, then the 16-bit count 272
+        self.assertEqual(bit_stream.to_bytes()[:3], bytes([0x40, 0x11, 0x06]))
+
+
+# Mode header and data bits for Versions 1-9 (ISO/IEC 18004 clause 7.4), independent of data_encoding
+_NUMERIC = set(b'0123456789')
+_ALPHANUMERIC = set(b'0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:')
+
+
+def _run_bits(mode: str, count: int) -> int:
+    """Bits of one segment of count characters in Versions 1-9."""
+    if mode == 'N':
+        return 4 + 10 + 10 * (count // 3) + (0, 4, 7)[count % 3]
+    if mode == 'A':
+        return 4 + 9 + 11 * (count // 2) + 6 * (count % 2)
+    return 4 + 8 + 8 * count
+
+
+def _brute_force_bits(data: bytes) -> int:
+    """Fewest bits over every assignment of an allowed mode to each character."""
+    choices = [[mode for mode, allowed in (('N', _NUMERIC), ('A', _ALPHANUMERIC), ('B', None))
+                if allowed is None or byte in allowed] for byte in data]
+    best = None
+    for modes in itertools.product(*choices):
+        bits = sum(_run_bits(mode, len(list(run))) for mode, run in itertools.groupby(modes))
+        best = bits if best is None else min(best, bits)
+    return best
+
+
+class SegmentationTest(unittest.TestCase):
+    """Mixed-mode segmentation is optimal and encodes as the spec examples."""
+
+    def test_segmentation_is_optimal(self):
+        rng = random.Random(3)
+        for _ in range(300):
+            data = bytes(rng.choice(b'0123456789ABC $:abc') for _ in range(rng.randint(1, 9)))
+            segments = data_encoding.segment_data(data, 1)
+            self.assertEqual(b''.join(segment.data for segment in segments), data)
+            bits = sum(data_encoding.segment_bit_length(segment, 1) for segment in segments)
+            self.assertEqual(bits, _brute_force_bits(data), data)
+
+    def test_hello_world_1m_known_answer(self):
+        bit_stream, version = data_encoding.encode_text('HELLO WORLD', 'M')
+        self.assertEqual(version, 1)
+        self.assertEqual(bit_stream.to_bytes(), bytes.fromhex('205b0b78d172dc4d4340ec11ec11ec11'))
+
+    def test_numeric_known_answer(self):
+        # ISO/IEC 18004 Annex I: "01234567" in Numeric mode, Version 1
+        segments = data_encoding.segment_data(b'01234567', 1)
+        self.assertEqual([(segment.mode, segment.char_count) for segment in segments],
+                         [(data_encoding.MODE_NUMERIC, 8)])
+        bit_stream, _ = data_encoding.encode_text('01234567', 'M')
+        self.assertEqual(bit_stream.to_bytes()[:5], bytes.fromhex('10200c5661'))
+
+
+class EciTest(unittest.TestCase):
+    """Text outside ISO-8859-1 is sent as UTF-8 behind an ECI header."""
+
+    def test_latin1_needs_no_eci(self):
+        self.assertEqual(data_encoding.prepare_payload('caf\u00e9'), data_encoding.Payload(b'caf\xe9', None))
+
+    def test_utf8_eci_header_known_answer(self):
+        payload = data_encoding.prepare_payload('\u20ac')  # Euro sign: neither ISO-8859-1 nor Shift-JIS
+        self.assertEqual(payload, data_encoding.Payload(b'\xe2\x82\xac', data_encoding.ECI_UTF8))
+        bit_stream, version = data_encoding.encode_text('\u20ac')
+        self.assertEqual(version, 1)
+        # 0111 ECI, 00011010 designator 26, 0100 Byte mode, count 3, E2 82 AC, terminator
+        self.assertEqual(bit_stream.to_bytes()[:7], bytes.fromhex('71a403e282ac00'))
+
+    def test_eci_designator_lengths(self):
+        for designator, expected in ((26, '1a'), (1000, '83e8'), (100000, 'c186a0')):
+            bit_stream = BitBuffer()
+            data_encoding.encode_eci(bit_stream, designator)
+            self.assertEqual(bit_stream.to_bytes().hex(), expected)
+
+
+class StructuredAppendTest(unittest.TestCase):
+    """Structured Append headers, parity and splitting (ISO/IEC 18004 clause 8)."""
+
+    def test_headers_and_parity(self):
+        text = 'Structured Append splits this text'
+        parity = 0
+        for byte in text.encode('latin-1'):
+            parity ^= byte
+        symbols = data_encoding.encode_structured_append(text, 'L', 1)
+        self.assertEqual(len(symbols), 3)
+        for index, (bit_stream, version) in enumerate(symbols):
+            self.assertEqual(version, 1)
+            header = bit_stream.to_bytes()[:3]
+            # 0011 mode, 4-bit position, 4-bit total - 1, 8-bit parity
+            self.assertEqual(header[0], 0x30 | index)
+            self.assertEqual(header[1], (len(symbols) - 1) << 4 | parity >> 4)
+            self.assertEqual(header[2] >> 4, parity & 0x0F)
+
+    def test_fitting_payload_is_one_ordinary_symbol(self):
+        (bit_stream, version), = data_encoding.encode_structured_append('HELLO WORLD', 'M')
+        self.assertEqual(version, 1)
+        self.assertEqual(bit_stream.to_bytes(), bytes.fromhex('205b0b78d172dc4d4340ec11ec11ec11'))
+
+    def test_split_points_are_non_empty_character_boundaries(self):
+        rng = random.Random(6)
+        for _ in range(300):
+            text = ''.join(rng.choice('a1\u20ac\U0001f600') for _ in range(rng.randint(1, 6)))
+            payload = data_encoding.prepare_payload(text)
+            starts = {len(text[:i].encode('utf-8')) for i in range(len(text))}
+            for parts in range(1, len(text) + 1):
+                points = data_encoding._split_points(payload, parts)
+                self.assertEqual((points[0], points[-1], len(points)), (0, len(payload.data), parts + 1))
+                self.assertTrue(all(a < b for a, b in zip(points, points[1:])), (text, points))
+                self.assertTrue(set(points[:-1]) <= starts, (text, points))
+            with self.assertRaises(ValueError):
+                data_encoding._split_points(payload, len(text) + 1)
+
+    def test_short_payload_with_small_version(self):
+        # Three characters in 1-H: one symbol per character, none left empty
+        symbols = data_encoding.encode_structured_append('a\u20ac\u20ac', 'H', 1)
+        self.assertEqual([bit_stream.to_bytes()[0] for bit_stream, _ in symbols], [0x30, 0x31, 0x32])
+        # A 4-byte character does not fit 1-H behind the headers and cannot be split further
+        with self.assertRaises(ValueError):
+            data_encoding.encode_structured_append('\U0001f600' * 2, 'H', 1)
+
+
+class _Pipe:
+    """Binary file object that cannot seek, like a pipe or socket."""
+
+    def __init__(self, data: bytes):
+        self._stream = io.BytesIO(data)
+
+    def read(self, size: int = -1) -> bytes:
+        return self._stream.read(min(size, 7) if size > 0 else size)  # Short reads
+
+    def seekable(self) -> bool:
+        return False
+
+
+class StreamingTest(unittest.TestCase):
+    """encode_byte_stream matches one-shot encoding for every kind of source."""
+
+    def test_sources_match_one_shot_encoding(self):
+        rng = random.Random(9)
+        for length in (0, 1, 17, 18, 271, 272, 1000, 2953):
+            data = bytes(rng.randrange(0x20, 0x7F) for _ in range(length))
+            expected = data_encoding.encode_byte_mode(data.decode('latin-1'))
+            sources = (
+                data,
+                bytearray(data),
+                memoryview(data),
+                io.BytesIO(data),
+                _Pipe(data),
+                (data[i:i + 100] for i in range(0, length, 100)),
+                iter(data),
+            )
+            for source in sources:
+                bit_stream, version = data_encoding.encode_byte_stream(source)
+                self.assertEqual((bit_stream.to_bytes(), version), (expected[0].to_bytes(), expected[1]),
+                                 (length, type(source)))
+
+    def test_eci_matches_one_shot_encoding(self):
+        text = '\u20ac' * 40
+        bit_stream, version = data_encoding.encode_byte_stream(io.BytesIO(text.encode('utf-8')),
+                                                               eci=data_encoding.ECI_UTF8)
+        expected_stream, expected_version = data_encoding.encode_text(text)
+        self.assertEqual((bit_stream.to_bytes(), version), (expected_stream.to_bytes(), expected_version))
+
+    def test_length_mismatch_and_overflow(self):
+        with self.assertRaises(ValueError):
+            data_encoding.encode_byte_stream(iter([b'abcd']), length=5)
+        with self.assertRaises(ValueError):
+            data_encoding.encode_byte_stream(iter([b'abcdef']), length=5)
+        with self.assertRaises(ValueError):
+            data_encoding.encode_byte_stream(_Pipe(b'a' * 2954))  # Unknown length, one byte too many
+        with self.assertRaises(ValueError):
+            data_encoding.encode_byte_stream(b'a' * 2954)
+
+
+class KanjiTest(unittest.TestCase):
+    """Shift-JIS double-byte characters are sent in Kanji Mode, 13 bits each."""
+
+    def test_kanji_known_answer(self):
+        # ISO/IEC 18004 clause 7.4.6: 0x935F -> 0x0D9F, 0xE4AA -> 0x1AAA
+        payload = data_encoding.prepare_payload('\u70b9\u8317')
+        self.assertEqual(payload, data_encoding.Payload(b'\x93\x5f\xe4\xaa', None, True))
+        bit_stream = BitBuffer()
+        data_encoding.encode_kanji(bit_stream, payload.data)
+        self.assertEqual(''.join(map(str, bit_stream)), '0110110011111' '1101010101010')
+
+    def test_kanji_header_known_answer(self):
+        bit_stream, version = data_encoding.encode_text('\u70b9\u8317')
+        self.assertEqual(version, 1)
+        # 1000 Kanji mode, 00000010 count, 0110110011111, 1101010101010, terminator
+        self.assertEqual(bit_stream.to_bytes()[:5], bytes.fromhex('8026cfeaa8'))
+
+    def test_count_bits_and_segment_length(self):
+        self.assertEqual([data_encoding.get_char_count_bits(data_encoding.MODE_KANJI, version)
+                          for version in (9, 10, 26, 27)], [8, 10, 10, 12])
+        segment = data_encoding.Segment(data_encoding.MODE_KANJI, 5, b'\x93\x5f' * 5)
+        self.assertEqual(data_encoding.segment_bit_length(segment, 1), 4 + 8 + 13 * 5)
+
+    def test_kanji_ranges(self):
+        self.assertTrue(data_encoding.is_kanji_pair(0x81, 0x40))
+        self.assertTrue(data_encoding.is_kanji_pair(0x9F, 0xFC))
+        self.assertTrue(data_encoding.is_kanji_pair(0xEB, 0xBF))
+        self.assertFalse(data_encoding.is_kanji_pair(0xEB, 0xC0))
+        self.assertFalse(data_encoding.is_kanji_pair(0xA0, 0x40))  # Half-width katakana lead byte
+        self.assertFalse(data_encoding.is_kanji_pair(0x81, 0x3F))
+
+    def test_mixed_text_splits_into_kanji_segment(self):
+        payload = data_encoding.prepare_payload('ABC\u70b9\u8317')
+        self.assertTrue(payload.kanji)
+        segments = data_encoding.segment_data(payload.data, 1, kanji=True)
+        self.assertEqual([(segment.mode, segment.char_count) for segment in segments],
+                         [(data_encoding.MODE_ALPHANUMERIC, 3), (data_encoding.MODE_KANJI, 2)])
+
+
+class EccUpgradeTest(unittest.TestCase):
+    """The upgraded level is the highest one that keeps the smallest version."""
+
+    def test_hello_world_upgrades_to_q(self):
+        # 74 bits: Version 1 holds 152 (L), 128 (M), 104 (Q) and 72 (H) data bits
+        self.assertEqual(data_encoding.upgrade_ecc_level(74, 1, 'L'), 'Q')
+        bit_stream, version, level = data_encoding.encode_text_max_ecc('HELLO WORLD')
+        self.assertEqual((version, level), (1, 'Q'))
+        self.assertEqual(bit_stream.to_bytes(), data_encoding.encode_text('HELLO WORLD', 'Q')[0].to_bytes())
+
+    def test_upgrade_keeps_version_and_is_highest(self):
+        rng = random.Random(16)
+        levels = 'LMQH'
+        for _ in range(200):
+            text = ''.join(rng.choice('0123456789ABCXYZ abc') for _ in range(rng.randint(1, 400)))
+            requested = rng.choice(levels)
+            try:
+                _, version = data_encoding.encode_text(text, requested)
+            except ValueError:
+                continue
+            bit_stream, upgraded_version, level = data_encoding.encode_text_max_ecc(text, requested)
+            self.assertEqual(upgraded_version, version)
+            self.assertGreaterEqual(levels.index(level), levels.index(requested))
+            self.assertEqual(len(bit_stream), DATA_CODEWORDS[level][version] * 8)
+            if level != 'H':
+                higher = levels[levels.index(level) + 1]
+                try:
+                    self.assertGreater(data_encoding.encode_text(text, higher)[1], version, (text, level))
+                except ValueError:
+                    pass  # Too long for Version 40 at the next level
+
+    def test_byte_mode_upgrade(self):
+        bit_stream, version, level = data_encoding.encode_byte_mode_max_ecc('a' * 10)
+        # 10 bytes: 4 + 8 + 80 = 92 bits fit Version 1-Q (104) but not 1-H (72)
+        self.assertEqual((version, level), (1, 'Q'))
+        self.assertEqual(len(bit_stream), DATA_CODEWORDS['Q'][1] * 8)
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,219 @@
+"""
+Error Correction Tests
+
+Checks the block structures and Reed-Solomon codewords against ISO/IEC 18004.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import os
+import random
+import sys
+import unittest
+from unittest import mock
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import error_correction  # noqa: E402
+from qr_tables import BLOCK_GROUPS, DATA_CODEWORDS, ECC_CODEWORDS_PER_BLOCK, MICRO_ECC_CODEWORDS  # noqa: E402
+
+# HELLO WORLD, Version 1-M: data codewords and their 10 error correction codewords
+HELLO_WORLD_1M_DATA = bytes.fromhex('205b0b78d172dc4d4340ec11ec11ec11')
+HELLO_WORLD_1M_ECC = bytes.fromhex('c4232777ebd7e7e25d17')
+
+
+class ErrorCorrectionLevelTest(unittest.TestCase):
+    """Levels L, M, Q and H follow ISO/IEC 18004 Table 9."""
+
+    def test_data_codewords_per_level(self):
+        self.assertEqual([DATA_CODEWORDS[level][1] for level in 'LMQH'], [19, 16, 13, 9])
+        self.assertEqual([DATA_CODEWORDS[level][40] for level in 'LMQH'], [2956, 2334, 1666, 1276])
+
+    def test_block_groups(self):
+        self.assertEqual(BLOCK_GROUPS['Q'][5], ((2, 15), (2, 16)))
+        self.assertEqual(BLOCK_GROUPS['H'][5], ((2, 11), (2, 12)))
+        self.assertEqual(BLOCK_GROUPS['M'][40], ((18, 47), (31, 48)))
+
+    def test_hello_world_1m_known_answer(self):
+        final_codewords = error_correction.build_final_codewords(HELLO_WORLD_1M_DATA, 1, 'M')
+        self.assertEqual(final_codewords, HELLO_WORLD_1M_DATA + HELLO_WORLD_1M_ECC)
+
+    def test_interleaving_of_uneven_blocks(self):
+        # Version 5-Q: data codewords 0..61 in blocks of 15, 15, 16 and 16
+        data = bytes(range(62))
+        final_codewords = error_correction.build_final_codewords(data, 5, 'Q')
+        self.assertEqual(final_codewords[:8], bytes([0, 15, 30, 46, 1, 16, 31, 47]))
+        self.assertEqual(final_codewords[60:62], bytes([45, 61]))  # Only the long blocks have a 16th codeword
+        self.assertEqual(len(final_codewords), 134)
+
+
+def _slow_multiply(a: int, b: int) -> int:
+    """Multiply in GF(256) modulo x^8 + x^4 + x^3 + x^2 + 1 bit by bit, without tables."""
+    product = 0
+    while b:
+        if b & 1:
+            product ^= a
+        b >>= 1
+        a <<= 1
+        if a & 0x100:
+            a ^= 0x11D
+    return product
+
+
+def _slow_ecc(block: bytes, ecc_count: int) -> bytes:
+    """Remainder of block * x^ecc_count divided by the generator, by polynomial long division."""
+    generator = [1]
+    root = 1
+    for _ in range(ecc_count):
+        generator = [a ^ _slow_multiply(b, root) for a, b in zip(generator + [0], [0] + generator)]
+        root = _slow_multiply(root, 2)
+    remainder = list(block) + [0] * ecc_count
+    for i in range(len(block)):
+        factor = remainder[i]
+        for j, coefficient in enumerate(generator):
+            remainder[i + j] ^= _slow_multiply(coefficient, factor)
+    return bytes(remainder[len(block):])
+
+
+class ReedSolomonEncoderTest(unittest.TestCase):
+    """The table-driven encoder matches ISO/IEC 18004 Annex A and long division."""
+
+    def test_generator_polynomial_known_answers(self):
+        # Annex A: exponents of the coefficients after the leading x^n term
+        for ecc_count, exponents in ((7, (87, 229, 146, 149, 238, 102, 21)),
+                                     (10, (251, 67, 46, 61, 118, 70, 64, 94, 32, 45))):
+            expected = bytes(error_correction.GF_EXP[exponent] for exponent in exponents)
+            self.assertEqual(error_correction.reed_solomon_generator(ecc_count), expected)
+
+    def test_gf_tables(self):
+        for value in range(1, 256):
+            self.assertEqual(error_correction.GF_EXP[error_correction.GF_LOG[value]], value)
+        for a, b in ((0x53, 0xCA), (0x02, 0x80), (0xFF, 0xFF), (0, 0x11)):
+            self.assertEqual(error_correction.gf_multiply(a, b), _slow_multiply(a, b))
+
+    def test_ecc_matches_long_division(self):
+        rng = random.Random(11)
+        ecc_counts = {count for counts in ECC_CODEWORDS_PER_BLOCK.values() for count in counts if count}
+        ecc_counts |= {count for counts in MICRO_ECC_CODEWORDS.values() for count in counts if count}
+        for ecc_count in sorted(ecc_counts):
+            block = bytes(rng.getrandbits(8) for _ in range(rng.randint(1, 60)))
+            self.assertEqual(error_correction._reed_solomon_ecc(block, ecc_count), _slow_ecc(block, ecc_count),
+                             ecc_count)
+
+    def test_generate_error_correction_known_answer(self):
+        self.assertEqual(error_correction.generate_error_correction(HELLO_WORLD_1M_DATA, 1, 'M'),
+                         HELLO_WORLD_1M_ECC)
+
+
+class BatchEncoderTest(unittest.TestCase):
+    """The batch encoders return list[bytes] equal to the one-at-a-time encoders, with or without numpy."""
+
+    def _check_batches(self):
+        rng = random.Random(12)
+        blocks = [bytes(rng.getrandbits(8) for _ in range(20)) for _ in range(9)]
+        ecc = error_correction.reed_solomon_batch(blocks, 18)
+        self.assertIsInstance(ecc, list)
+        self.assertEqual(ecc, [error_correction._reed_solomon_ecc(block, 18) for block in blocks])
+        for version, ecc_level in ((1, 'M'), (5, 'Q'), (27, 'H')):
+            messages = [bytes(rng.getrandbits(8) for _ in range(DATA_CODEWORDS[ecc_level][version]))
+                        for _ in range(4)]
+            final = error_correction.build_final_codewords_batch(messages, version, ecc_level)
+            self.assertIsInstance(final, list)
+            self.assertEqual(final, [error_correction.build_final_codewords(message, version, ecc_level)
+                                     for message in messages])
+            self.assertTrue(all(type(codewords) is bytes for codewords in final))
+
+    def test_without_numpy(self):
+        with mock.patch.object(error_correction, 'np', None):
+            self._check_batches()
+
+    @unittest.skipIf(error_correction.np is None, "numpy is not installed")
+    def test_with_numpy(self):
+        self._check_batches()
+
+
+class ReedSolomonDecoderTest(unittest.TestCase):
+    """decode_reed_solomon corrects up to ecc_count // 2 wrong codewords."""
+
+    def test_corrects_up_to_t_errors(self):
+        rng = random.Random(13)
+        for ecc_count in (2, 7, 10, 18, 30):
+            limit = ecc_count // 2
+            for _ in range(20):
+                data = bytes(rng.getrandbits(8) for _ in range(rng.randint(1, 255 - ecc_count)))
+                block = data + error_correction._reed_solomon_ecc(data, ecc_count)
+                errors = rng.randint(0, limit)
+                received = bytearray(block)
+                for position in rng.sample(range(len(block)), errors):
+                    received[position] ^= rng.randint(1, 255)
+                self.assertEqual(error_correction.decode_reed_solomon(bytes(received), ecc_count), (data, errors))
+
+    def test_beyond_t_errors_is_not_silently_accepted(self):
+        rng = random.Random(14)
+        for _ in range(50):
+            data = bytes(rng.getrandbits(8) for _ in range(20))
+            block = bytearray(data + error_correction._reed_solomon_ecc(data, 10))
+            for position in rng.sample(range(len(block)), 6):
+                block[position] ^= rng.randint(1, 255)
+            try:
+                decoded, _ = error_correction.decode_reed_solomon(bytes(block), 10)
+            except ValueError:
+                continue
+            self.assertNotEqual(decoded, data)  # Decoded to a different codeword, never the original
+
+    def test_correct_final_codewords(self):
+        final = bytearray(HELLO_WORLD_1M_DATA + HELLO_WORLD_1M_ECC)
+        for position in (0, 3, 9, 17, 25):  # 5 errors, the limit for 10 ECC codewords
+            final[position] ^= 0xA5
+        self.assertEqual(error_correction.correct_final_codewords(bytes(final), 1, 'M'), (HELLO_WORLD_1M_DATA, 5))
+        final[12] ^= 0x01
+        with self.assertRaises(ValueError):
+            error_correction.correct_final_codewords(bytes(final), 1, 'M')
+
+    def test_interleaved_blocks_round_trip(self):
+        rng = random.Random(15)
+        data = bytes(rng.getrandbits(8) for _ in range(DATA_CODEWORDS['Q'][5]))
+        final = bytearray(error_correction.build_final_codewords(data, 5, 'Q'))
+        final[0] ^= 0xFF  # Block 0, data
+        final[-1] ^= 0xFF  # Block 3, ECC
+        self.assertEqual(error_correction.correct_final_codewords(bytes(final), 5, 'Q'), (data, 2))
+
+
+class IncrementalUpdateTest(unittest.TestCase):
+    """Patching the ECC for changed codewords gives the same ECC as encoding the new data."""
+
+    def test_update_matches_full_encoding(self):
+        rng = random.Random(14)
+        for version, ecc_level in ((1, 'M'), (5, 'Q'), (10, 'H'), (21, 'L'), (40, 'M')):
+            data = bytearray(rng.getrandbits(8) for _ in range(DATA_CODEWORDS[ecc_level][version]))
+            ecc = error_correction.generate_error_correction(bytes(data), version, ecc_level)
+            for _ in range(5):
+                changes = []
+                for position in rng.sample(range(len(data)), rng.randint(1, 6)):
+                    new_value = rng.getrandbits(8)
+                    changes.append((position, data[position], new_value))
+                    data[position] = new_value
+                ecc = error_correction.update_error_correction(ecc, changes, version, ecc_level)
+                self.assertEqual(ecc, error_correction.generate_error_correction(bytes(data), version, ecc_level),
+                                 (version, ecc_level))
+
+    def test_update_block_ecc_matches_block_encoding(self):
+        rng = random.Random(15)
+        block = bytearray(rng.getrandbits(8) for _ in range(40))
+        ecc = error_correction._reed_solomon_ecc(bytes(block), 22)
+        changes = [(0, block[0], 0x5A), (39, block[39], 0x00), (17, block[17], block[17])]  # Last one unchanged
+        for position, _, new_value in changes:
+            block[position] = new_value
+        self.assertEqual(error_correction.update_block_ecc(ecc, 40, changes),
+                         error_correction._reed_solomon_ecc(bytes(block), 22))
+
+    def test_invalid_updates(self):
+        ecc = error_correction.generate_error_correction(HELLO_WORLD_1M_DATA, 1, 'M')
+        with self.assertRaises(ValueError):
+            error_correction.update_error_correction(ecc, [(16, 0, 1)], 1, 'M')  # Only 16 data codewords
+        with self.assertRaises(ValueError):
+            error_correction.update_error_correction(ecc[:-1], [(0, 0, 1)], 1, 'M')
+
+
+if __name__ == '__main__':
+    unittest.main()
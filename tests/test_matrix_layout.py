@@ -0,0 +1,188 @@
+"""
+Matrix Layout Tests
+
+Checks module placement against the positions and bit strings given in
+ISO/IEC 18004.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import os
+import random
+import sys
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import matrix_layout  # noqa: E402
+import qr_verification  # noqa: E402
+from bit_buffer import BitBuffer  # noqa: E402
+from qr_tables import REMAINDER_BITS, TOTAL_CODEWORDS  # noqa: E402
+
+
+class VersionAndFormatInformationTest(unittest.TestCase):
+    """Version and format information bits and positions."""
+
+    def test_version_information_known_answers(self):
+        # ISO/IEC 18004 Annex D, Table D.1
+        self.assertEqual(matrix_layout.get_version_info_string(7), '000111110010010100')
+        self.assertEqual(matrix_layout.get_version_info_string(21), '010101011010000011')
+        self.assertEqual(matrix_layout.get_version_info_string(40), '101000110001101001')
+
+    def test_secondary_format_copy_positions(self):
+        size = 25
+        matrix = [[0] * size for _ in range(size)]
+        fmt = '111011111000100'  # Level L, mask 0
+        matrix_layout.place_format_information(matrix, fmt, size)
+        # Bits 0-6 run up column 8 from the bottom row, bits 7-14 along row 8 to the right edge
+        bottom_left = [matrix[size - 1 - i][8] for i in range(7)]
+        top_right = [matrix[8][size - 8 + i] for i in range(8)]
+        self.assertEqual(''.join(map(str, bottom_left + top_right)), fmt)
+        self.assertEqual(matrix[size - 8][8], 1)  # Dark module
+
+
+def _bch_word(data: int, data_bits: int, generator: int) -> int:
+    """Append the BCH remainder of data, computed with integer polynomial division."""
+    degree = generator.bit_length() - 1
+    remainder = data << degree
+    for shift in range(data_bits - 1, -1, -1):
+        if remainder >> (shift + degree) & 1:
+            remainder ^= generator << shift
+    return data << degree | remainder
+
+
+class PrecomputedTablesTest(unittest.TestCase):
+    """The precomputed format and version words and coordinates match ISO/IEC 18004 Annex C and D."""
+
+    def test_format_words(self):
+        level_bits = {'L': 0b01, 'M': 0b00, 'Q': 0b11, 'H': 0b10}
+        self.assertEqual(len(matrix_layout.FORMAT_INFO_STRINGS), 32)
+        for (level, mask), fmt in matrix_layout.FORMAT_INFO_STRINGS.items():
+            expected = _bch_word(level_bits[level] << 3 | mask, 5, 0b10100110111) ^ 0b101010000010010
+            self.assertEqual(fmt, format(expected, '015b'), (level, mask))
+            self.assertEqual(matrix_layout.FORMAT_INFO_BITS[(level, mask)], tuple(map(int, fmt * 2)))
+        self.assertEqual(matrix_layout.FORMAT_INFO_STRINGS[('L', 0)], '111011111000100')
+        self.assertEqual(matrix_layout.FORMAT_INFO_STRINGS[('M', 0)], '101010000010010')
+
+    def test_version_words(self):
+        self.assertEqual(sorted(matrix_layout.VERSION_INFO_STRINGS), list(range(7, 41)))
+        for version, word in matrix_layout.VERSION_INFO_STRINGS.items():
+            self.assertEqual(word, format(_bch_word(version, 6, 0b1111100100101), '018b'), version)
+
+    def test_primary_format_copy_positions(self):
+        size = 21
+        matrix = [[0] * size for _ in range(size)]
+        fmt = matrix_layout.FORMAT_INFO_STRINGS[('Q', 5)]
+        matrix_layout.place_format_information(matrix, fmt, size)
+        # Most significant bit at (8, 0), along row 8 skipping the timing column, then up column 8
+        positions = [(8, 0), (8, 1), (8, 2), (8, 3), (8, 4), (8, 5), (8, 7), (8, 8),
+                     (7, 8), (5, 8), (4, 8), (3, 8), (2, 8), (1, 8), (0, 8)]
+        self.assertEqual(''.join(str(matrix[r][c]) for r, c in positions), fmt)
+        # Placing the precomputed bits gives the same matrix as placing the string
+        from_bits = [[0] * size for _ in range(size)]
+        matrix_layout.place_format_information(from_bits, matrix_layout.FORMAT_INFO_BITS[('Q', 5)], size)
+        self.assertEqual(from_bits, matrix)
+
+    def test_version_information_positions(self):
+        version, size = 7, 45
+        matrix = [[0] * size for _ in range(size)]
+        matrix_layout.place_version_information(matrix, version)
+        word = matrix_layout.VERSION_INFO_STRINGS[version]
+        for bit in range(18):
+            # Bit i (least significant first) at row size-11 + i % 3, column i // 3, and transposed
+            r, c = size - 11 + bit % 3, bit // 3
+            self.assertEqual(matrix[r][c], int(word[17 - bit]), bit)
+            self.assertEqual(matrix[c][r], int(word[17 - bit]), bit)
+
+
+def _raw_data_modules(version: int) -> int:
+    """Data modules of a version from the closed formula (ISO/IEC 18004 Table 1)."""
+    modules = (16 * version + 128) * version + 64
+    if version >= 2:
+        alignment_count = version // 7 + 2
+        modules -= (25 * alignment_count - 10) * alignment_count - 55
+        if version >= 7:
+            modules -= 36  # Two version information blocks
+    return modules
+
+
+class SymbolTemplateTest(unittest.TestCase):
+    """The cached per-version templates hold the right geometry and are never modified."""
+
+    def test_data_module_counts(self):
+        for version in range(1, 41):
+            template = matrix_layout.get_qr_template(version)
+            self.assertEqual(template.data_module_count, _raw_data_modules(version), version)
+            self.assertEqual(template.data_module_count, TOTAL_CODEWORDS[version] * 8 + REMAINDER_BITS[version])
+            self.assertEqual(sum(template.function_bits), template.size ** 2 - template.data_module_count)
+
+    def test_function_map_matches_geometry(self):
+        for version in range(1, 41):
+            template = matrix_layout.get_qr_template(version)
+            expected = qr_verification._build_function_map(version)
+            self.assertEqual([list(row) for row in template.function_map], expected, version)
+            self.assertEqual(template.function_bits, bytes(cell for row in expected for cell in row))
+
+    def test_template_is_cached_and_unchanged(self):
+        template = matrix_layout.get_qr_template(7)
+        modules = template.modules
+        bits = BitBuffer()
+        bits.append_bits((1 << 1568) - 1, 1568)  # All dark data modules
+        symbol = matrix_layout.generate_qr_module(bits, 7)
+        self.assertIs(matrix_layout.get_qr_template(7), template)
+        self.assertEqual(template.modules, modules)
+        self.assertTrue(all(symbol.cells[index] == 1 for index in template.data_module_order))
+
+    def test_invalid_version(self):
+        for version in (0, 41):
+            with self.assertRaises(ValueError):
+                matrix_layout.get_qr_template(version)
+
+
+def _reference_zigzag(function_map):
+    """Data modules in placement order, transcribed from drawCodewords in Nayuki's QR Code generator."""
+    size = len(function_map)
+    order = []
+    right = size - 1
+    while right >= 1:
+        if right == 6:
+            right = 5  # Skip the vertical timing pattern
+        for vert in range(size):
+            for j in range(2):
+                x = right - j
+                upward = ((right + 1) & 2) == 0
+                y = size - 1 - vert if upward else vert
+                if not function_map[y][x]:
+                    order.append(y * size + x)
+        right -= 2
+    return order
+
+
+class DataModuleOrderTest(unittest.TestCase):
+    """The precomputed zigzag order matches an independent reference and reads back what was placed."""
+
+    def test_order_matches_reference(self):
+        for version in range(1, 41):
+            order = matrix_layout.get_qr_template(version).data_module_order
+            self.assertEqual(list(order), _reference_zigzag(qr_verification._build_function_map(version)), version)
+
+    def test_first_codeword_positions(self):
+        # Version 1: codeword 0 fills the bottom-right 2x4 block, upward, right column first
+        order = matrix_layout.get_qr_template(1).data_module_order
+        self.assertEqual([divmod(index, 21) for index in order[:8]],
+                         [(20, 20), (20, 19), (19, 20), (19, 19), (18, 20), (18, 19), (17, 20), (17, 19)])
+
+    def test_read_codewords_round_trip(self):
+        rng = random.Random(18)
+        for version in (1, 6, 14, 33):
+            template = matrix_layout.get_qr_template(version)
+            final = bytes(rng.getrandbits(8) for _ in range(TOTAL_CODEWORDS[version]))
+            bits = BitBuffer.from_bytes(final)
+            bits.append_bits(0, REMAINDER_BITS[version])
+            symbol = matrix_layout.generate_qr_module(bits, version)
+            for order in (template.data_module_order, None):  # Cached order and a freshly derived one
+                self.assertEqual(matrix_layout.read_codewords(symbol, template.function_map, len(final),
+                                                              order=order), final)
+
+if __name__ == '__main__':
+    unittest.main()
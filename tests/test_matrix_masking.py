@@ -0,0 +1,316 @@
+"""
+Matrix Masking Tests
+
+Checks the fused list scorer (calculate_total_penalty_score) and the bitboard
+engine (calculate_symbol_penalty_score) against a rule-by-rule reference
+scorer: the straightforward Rule 1, 2 and 3 loops the engines replaced. Also
+checks the tiled mask planes against the mask conditions of ISO/IEC 18004
+Table 10, and the branch and bound mask search against an exhaustive one.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import math
+import os
+import random
+import sys
+import unittest
+from typing import List
+from unittest import mock
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import matrix_layout  # noqa: E402
+import matrix_masking  # noqa: E402
+from bit_buffer import BitBuffer  # noqa: E402
+from symbol_matrix import SymbolMatrix  # noqa: E402
+
+
+# Reference scorer: one rule at a time, module by module
+def reference_rule1(matrix: List[List[int]]) -> int:
+    """
+    Calculate penalty for Rule 1: Adjacent modules in row/column in same colour.
+
+    Penalty is 3 points plus 1 for each module beyond 5 in a consecutive group.
+
+    Args:
+        matrix: QR matrix to evaluate
+
+    Returns:
+        int: Total penalty score for Rule 1
+    """
+    penalty = 0
+    height, width = len(matrix), len(matrix[0])  # Rectangular for rMQR
+
+    # Check rows for consecutive modules
+    for r_idx in range(height):
+        count = 1
+        current_val = matrix[r_idx][0] if width > 0 else -1
+
+        for c_idx in range(1, width):
+            if matrix[r_idx][c_idx] == current_val:
+                count += 1
+            else:
+                # End of consecutive group
+                if count >= 5:
+                    penalty += (3 + (count - 5))
+                current_val = matrix[r_idx][c_idx]
+                count = 1
+
+        # Check last group in row
+        if count >= 5:
+            penalty += (3 + (count - 5))
+
+    # Check columns for consecutive modules
+    for c_idx in range(width):
+        count = 1
+        current_val = matrix[0][c_idx] if height > 0 else -1
+
+        for r_idx in range(1, height):
+            if matrix[r_idx][c_idx] == current_val:
+                count += 1
+            else:
+                # End of consecutive group
+                if count >= 5:
+                    penalty += (3 + (count - 5))
+                current_val = matrix[r_idx][c_idx]
+                count = 1
+
+        # Check last group in column
+        if count >= 5:
+            penalty += (3 + (count - 5))
+
+    return penalty
+
+
+def reference_rule2(matrix: List[List[int]]) -> int:
+    """
+    Calculate penalty for Rule 2: 2x2 blocks of same colour.
+
+    Each 2x2 block of the same colour incurs 3 penalty points.
+
+    Args:
+        matrix: QR matrix to evaluate
+
+    Returns:
+        int: Total penalty score for Rule 2
+    """
+    penalty = 0
+    height, width = len(matrix), len(matrix[0])
+
+    # Check all possible 2x2 blocks
+    for r_idx in range(height - 1):
+        for c_idx in range(width - 1):
+            # Check if all four modules in 2x2 block are the same
+            if matrix[r_idx][c_idx] == matrix[r_idx + 1][c_idx] and \
+                    matrix[r_idx][c_idx] == matrix[r_idx][c_idx + 1] and \
+                    matrix[r_idx][c_idx] == matrix[r_idx + 1][c_idx + 1]:
+                penalty += 3
+
+    return penalty
+
+
+def reference_rule3(matrix: List[List[int]]) -> int:
+    """
+    Calculate penalty for Rule 3: Specific patterns resembling finder patterns.
+
+    Looks for patterns of 1:1:3:1:1 ratio (dark:light:dark:light:dark) with
+    4 light modules on either side. Each occurrence incurs 40 penalty points.
+
+    Args:
+        matrix: QR matrix to evaluate
+
+    Returns:
+        int: Total penalty score for Rule 3
+    """
+    penalty = 0
+    height, width = len(matrix), len(matrix[0])
+
+    # Define patterns to search for (as per Thonky specification)
+    # Pattern: LLLL D L DDD L D or D L DDD L D LLLL
+    patterns_to_check_horizontal = [
+        [0, 0, 0, 0, 1, 0, 1, 1, 1, 0, 1],  # 00001011101
+        [1, 0, 1, 1, 1, 0, 1, 0, 0, 0, 0]  # 10111010000
+    ]
+    pat_len = 11
+
+    # Check rows for patterns
+    for r_idx in range(height):
+        for c_idx in range(width - pat_len + 1):
+            current_row_slice = matrix[r_idx][c_idx: c_idx + pat_len]
+            if current_row_slice == patterns_to_check_horizontal[0] or \
+                    current_row_slice == patterns_to_check_horizontal[1]:
+                penalty += 40
+
+    # Check columns for patterns
+    for c_idx in range(width):
+        for r_idx in range(height - pat_len + 1):
+            current_col_slice = [matrix[k][c_idx] for k in range(r_idx, r_idx + pat_len)]
+            if current_col_slice == patterns_to_check_horizontal[0] or \
+                    current_col_slice == patterns_to_check_horizontal[1]:
+                penalty += 40
+
+    return penalty
+
+
+def reference_penalties(matrix: List[List[int]]) -> List[int]:
+    """Return [rule1, rule2, rule3, rule4] of a 0/1 matrix from the reference loops."""
+    return [reference_rule1(matrix), reference_rule2(matrix), reference_rule3(matrix),
+            matrix_masking._calculate_penalty_rule4(matrix)]
+
+
+def _random_symbol(version: int, rng: random.Random) -> SymbolMatrix:
+    """Build an unmasked symbol of a version filled with random data bits."""
+    bit_count = matrix_layout.get_expected_bitstream_length_for_version(version)
+    bits = BitBuffer()
+    bits.append_bits(rng.getrandbits(bit_count), bit_count)
+    return matrix_layout.generate_qr_module(bits, version)
+
+
+class PenaltyScoreTest(unittest.TestCase):
+    """Both engines score exactly as the reference loops."""
+
+    def setUp(self):
+        self.rng = random.Random(20)
+
+    def _check(self, rows: List[List[int]]):
+        expected = reference_penalties(rows)
+        self.assertEqual(matrix_masking.calculate_total_penalty_score(rows), (sum(expected), expected))
+        symbol = SymbolMatrix(len(rows), len(rows[0]), bytes(cell for row in rows for cell in row))
+        self.assertEqual(matrix_masking.calculate_symbol_penalty_score(symbol), (sum(expected), expected))
+
+    def test_random_matrices(self):
+        for _ in range(300):
+            height, width = self.rng.randint(1, 25), self.rng.randint(1, 25)
+            density = self.rng.choice((0.1, 0.5, 0.9))  # Sparse and dense matrices have long runs
+            self._check([[int(self.rng.random() < density) for _ in range(width)] for _ in range(height)])
+
+    def test_finder_like_patterns_and_runs(self):
+        pattern = [0, 0, 0, 0, 1, 0, 1, 1, 1, 0, 1]
+        self._check([pattern, pattern[::-1], [1] * 11, [0] * 11])
+        self._check([pattern + pattern[::-1]] * 3)
+        self._check([[0] * 7] * 7)
+
+    def test_masked_symbols(self):
+        for version in (1, 2, 7, 15, 27):
+            symbol = _random_symbol(version, self.rng)
+            function_map = matrix_masking.create_function_pattern_matrix(version)
+            for mask in range(8):
+                masked = matrix_masking.apply_specific_mask_pattern(mask, symbol, function_map)
+                self._check(masked.to_rows())
+
+    def test_rectangular_rmqr(self):
+        matrix = matrix_layout.generate_rmqr_function_patterns(9)
+        self._check([[cell if cell in (0, 1) else self.rng.getrandbits(1) for cell in row] for row in matrix])
+
+    def test_malformed_matrix(self):
+        with self.assertLogs(matrix_masking.logger, 'WARNING'):
+            total, penalties = matrix_masking.calculate_total_penalty_score([], 3)
+        self.assertEqual(total, math.inf)
+        self.assertEqual(penalties, [math.inf] * 4)
+
+
+# ISO/IEC 18004 Table 10 mask conditions, i = row and j = column
+SPEC_MASK_CONDITIONS = (
+    lambda i, j: (i + j) % 2 == 0,
+    lambda i, j: i % 2 == 0,
+    lambda i, j: j % 3 == 0,
+    lambda i, j: (i + j) % 3 == 0,
+    lambda i, j: (math.floor(i / 2) + math.floor(j / 3)) % 2 == 0,
+    lambda i, j: (i * j) % 2 + (i * j) % 3 == 0,
+    lambda i, j: ((i * j) % 2 + (i * j) % 3) % 2 == 0,
+    lambda i, j: ((i + j) % 2 + (i * j) % 3) % 2 == 0,
+)
+
+
+class MaskPlaneTest(unittest.TestCase):
+    """The tiled mask planes equal the mask conditions evaluated module by module."""
+
+    def _layouts(self):
+        for version in (1, 2, 6, 7, 13, 40):
+            yield matrix_layout.get_qr_template(version).function_map
+        yield matrix_masking.create_micro_function_pattern_matrix(3)
+        yield matrix_masking.create_rmqr_function_pattern_matrix(31)  # R17x139
+
+    def test_planes_match_conditions(self):
+        for function_map in self._layouts():
+            height, width = len(function_map), len(function_map[0])
+            function_bits = bytes(cell for row in function_map for cell in row)
+            planes = matrix_masking.get_mask_planes(function_bits, height, width)
+            for pattern_id, condition in enumerate(SPEC_MASK_CONDITIONS):
+                expected = bytes(int(condition(r, c) and not function_map[r][c])
+                                 for r in range(height) for c in range(width))
+                self.assertEqual(planes[pattern_id], expected, (height, width, pattern_id))
+
+    def test_condition_functions_match_spec(self):
+        for pattern_id, condition in enumerate(SPEC_MASK_CONDITIONS):
+            function = matrix_masking.MASK_CONDITION_FUNCTIONS[pattern_id]
+            self.assertTrue(all(function(r, c) == condition(r, c) for r in range(30) for c in range(30)))
+
+    def test_apply_mask_inverts_data_modules_only(self):
+        rng = random.Random(21)
+        symbol = _random_symbol(8, rng)
+        function_map = matrix_masking.create_function_pattern_matrix(8)
+        size = symbol.width
+        for pattern_id, condition in enumerate(SPEC_MASK_CONDITIONS):
+            masked = matrix_masking.apply_specific_mask_pattern(pattern_id, symbol, function_map)
+            for r in range(size):
+                for c in range(size):
+                    flip = condition(r, c) and not function_map[r][c]
+                    self.assertEqual(masked[r][c], symbol[r][c] ^ flip, (pattern_id, r, c))
+        with self.assertRaises(ValueError):
+            matrix_masking.apply_specific_mask_pattern(8, symbol, function_map)
+
+
+class MaskSelectionTest(unittest.TestCase):
+    """find_best_pattern picks the mask the exhaustive search picks: lowest total, then lowest ID."""
+
+    def _exhaustive(self, symbol, function_map):
+        scores = [matrix_masking.calculate_symbol_penalty_score(
+            matrix_masking.apply_specific_mask_pattern(mask, symbol, function_map))[0] for mask in range(8)]
+        return min(range(8), key=lambda mask: (scores[mask], mask))
+
+    def _check(self, symbol, version):
+        function_map = matrix_masking.create_function_pattern_matrix(version)
+        masked, mask_id = matrix_masking.find_best_pattern(symbol, function_map)
+        self.assertEqual(mask_id, self._exhaustive(symbol, function_map), version)
+        self.assertEqual(masked, matrix_masking.apply_specific_mask_pattern(mask_id, symbol, function_map))
+
+    def test_random_symbols(self):
+        rng = random.Random(24)
+        for _ in range(40):
+            version = rng.randint(1, 40)
+            self._check(_random_symbol(version, rng), version)
+
+    def test_constant_data(self):
+        for version in (1, 5, 21):
+            bit_count = matrix_layout.get_expected_bitstream_length_for_version(version)
+            for value in (0, (1 << bit_count) - 1):
+                bits = BitBuffer()
+                bits.append_bits(value, bit_count)
+                self._check(matrix_layout.generate_qr_module(bits, version), version)
+
+    def test_band_scores_add_up(self):
+        rng = random.Random(25)
+        symbol = _random_symbol(9, rng)
+        height, width = symbol.height, symbol.width
+        function_map = matrix_masking.create_function_pattern_matrix(9)
+        masked = matrix_masking.apply_specific_mask_pattern(3, symbol, function_map)
+        total, penalties = matrix_masking.calculate_symbol_penalty_score(masked)
+        modules = masked.modules()
+        rows = matrix_masking._pack_board(modules, height, width)
+        columns = matrix_masking._pack_board(matrix_masking._transpose_modules(modules, height, width), width, height)
+        args = (rows, columns, height, width,
+                matrix_masking._board_valid_bits(height, width), matrix_masking._board_valid_bits(width, height),
+                penalties[3], 3)
+        for bands in (1, 2, 3, 7, height):
+            with mock.patch.object(matrix_masking, '_BOUND_BANDS', bands):
+                self.assertEqual(matrix_masking._board_penalty_bounded(*args, (math.inf, 8)), (penalties, total))
+                # A tie with a lower mask ID cannot be beaten, a tie with a higher one can
+                self.assertIsNone(matrix_masking._board_penalty_bounded(*args, (total, 2))[0])
+                self.assertEqual(matrix_masking._board_penalty_bounded(*args, (total, 4)), (penalties, total))
+                self.assertEqual(matrix_masking._board_penalty_bounded(*args, (penalties[3], 2)), (None, penalties[3]))
+
+
+if __name__ == '__main__':
+    unittest.main()
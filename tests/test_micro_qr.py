@@ -0,0 +1,62 @@
+"""
+Micro QR Tests
+
+Checks Micro QR encoding, error correction and masking against the worked
+example in ISO/IEC 18004 Annex I.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import os
+import sys
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import data_encoding  # noqa: E402
+import error_correction  # noqa: E402
+import matrix_layout  # noqa: E402
+import matrix_masking  # noqa: E402
+
+
+class MicroQrTest(unittest.TestCase):
+    """Micro QR symbols M1-M4."""
+
+    def test_m2_l_known_answer(self):
+        # ISO/IEC 18004 Annex I: "01234567" as M2-L
+        data_bits, micro_version = data_encoding.encode_micro_text('01234567', 'L')
+        self.assertEqual(micro_version, 2)
+        self.assertEqual(data_bits.to_bytes(), bytes.fromhex('4018acc300'))
+        final_bits = error_correction.build_micro_final_bits(data_bits, micro_version, 'L')
+        self.assertEqual(final_bits.to_bytes(), bytes.fromhex('4018acc300860d22ae30'))
+
+    def test_m1_half_codeword(self):
+        # M1 holds 20 data bits: the last data codeword is 4 bits long
+        data_bits, micro_version = data_encoding.encode_micro_text('12345', 'L')
+        self.assertEqual((micro_version, len(data_bits)), (1, 20))
+        final_bits = error_correction.build_micro_final_bits(data_bits, micro_version, 'L')
+        self.assertEqual(len(final_bits), 20 + 2 * 8)
+
+    def test_unsupported_level(self):
+        data_bits, _ = data_encoding.encode_micro_text('1', 'L')
+        with self.assertRaises(ValueError):
+            error_correction.build_micro_final_bits(data_bits, 1, 'M')  # M1 is error detection only
+
+    def test_best_mask_has_highest_score(self):
+        data_bits, micro_version = data_encoding.encode_micro_text('HELLO', 'L')
+        final_bits = error_correction.build_micro_final_bits(data_bits, micro_version, 'L')
+        symbol = matrix_layout.generate_micro_qr_module(final_bits, micro_version)
+        self.assertEqual((symbol.height, symbol.width), (13, 13))
+        function_map = matrix_masking.create_micro_function_pattern_matrix(micro_version)
+        masked, mask_id = matrix_masking.find_best_micro_pattern(symbol, function_map)
+        scores = [matrix_masking.calculate_micro_mask_score(
+            matrix_masking.apply_specific_mask_pattern(pattern, symbol, function_map).to_rows())
+            for pattern in matrix_masking.MICRO_MASK_PATTERNS]
+        self.assertEqual(scores[mask_id], max(scores))
+        self.assertEqual(mask_id, scores.index(max(scores)))  # First of equal scores wins
+        self.assertEqual(masked.to_rows(), matrix_masking.apply_specific_mask_pattern(
+            matrix_masking.MICRO_MASK_PATTERNS[mask_id], symbol, function_map).to_rows())
+
+
+if __name__ == '__main__':
+    unittest.main()
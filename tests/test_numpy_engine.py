@@ -0,0 +1,68 @@
+"""
+NumPy Mask Engine Parity Tests
+
+Checks that the optional numpy penalty engine scores every mask of random
+Version 10-40 symbols exactly as the bitboard engine does, and that
+find_best_pattern picks the same mask with either engine. Skipped when numpy
+is not installed.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import contextlib
+import io
+import os
+import random
+import sys
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import matrix_layout  # noqa: E402
+import matrix_masking  # noqa: E402
+from bit_buffer import BitBuffer  # noqa: E402
+
+
+def _random_symbol(version: int, rng: random.Random):
+    """Build an unmasked symbol of a version filled with random data bits."""
+    bit_count = matrix_layout.get_expected_bitstream_length_for_version(version)
+    bits = BitBuffer()
+    bits.append_bits(rng.getrandbits(bit_count), bit_count)
+    return matrix_layout.generate_qr_module(bits, version)
+
+
+@unittest.skipIf(matrix_masking.np is None, "numpy is not installed")
+class NumpyEngineParityTest(unittest.TestCase):
+    """The numpy engine and the bitboard engine agree."""
+
+    def test_scores_match_bitboard_engine(self):
+        rng = random.Random(22)
+        for version in list(range(10, 41, 3)) + [40]:
+            symbol = _random_symbol(version, rng)
+            function_map = matrix_masking.create_function_pattern_matrix(version)
+            scores = matrix_masking._numpy_penalty_scores(symbol.modules(), symbol.function_bits,
+                                                          symbol.height, symbol.width)
+            for mask_id in range(8):
+                masked = matrix_masking.apply_specific_mask_pattern(mask_id, symbol, function_map)
+                _, expected = matrix_masking.calculate_symbol_penalty_score(masked)
+                self.assertEqual(scores[mask_id], expected, f"Version {version}, Mask {mask_id}")
+
+    def test_same_mask_selected(self):
+        rng = random.Random(23)
+        enabled, min_size = matrix_masking.NUMPY_ENGINE_ENABLED, matrix_masking.NUMPY_ENGINE_MIN_SIZE
+        try:
+            for version in range(10, 41, 6):
+                symbol = _random_symbol(version, rng)
+                function_map = matrix_masking.create_function_pattern_matrix(version)
+                selected = []
+                for use_numpy in (True, False):
+                    matrix_masking.NUMPY_ENGINE_ENABLED, matrix_masking.NUMPY_ENGINE_MIN_SIZE = use_numpy, 0
+                    with contextlib.redirect_stdout(io.StringIO()):
+                        selected.append(matrix_masking.find_best_pattern(symbol, function_map))
+                self.assertEqual(selected[0], selected[1], f"Version {version}")
+        finally:
+            matrix_masking.NUMPY_ENGINE_ENABLED, matrix_masking.NUMPY_ENGINE_MIN_SIZE = enabled, min_size
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,96 @@
+"""
+QR Verification Tests
+
+Checks that finished symbols read back to the codewords they were built
+from, that damaged or mislabelled symbols are reported as failures, and that
+the verification counters stay consistent under concurrent updates.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import os
+import random
+import sys
+import threading
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import matrix_layout  # noqa: E402
+import matrix_masking  # noqa: E402
+import qr_verification  # noqa: E402
+from bit_buffer import BitBuffer  # noqa: E402
+from error_correction import build_final_codewords  # noqa: E402
+from qr_tables import DATA_CODEWORDS, REMAINDER_BITS  # noqa: E402
+
+
+def _build_symbol(data_codewords: bytes, version: int, ecc_level: str, mask: int):
+    """Build a finished symbol with a given mask, as assemble_encoded_symbol does with the best one."""
+    final_bits = BitBuffer.from_bytes(build_final_codewords(data_codewords, version, ecc_level))
+    final_bits.append_bits(0, REMAINDER_BITS[version])
+    symbol = matrix_layout.generate_qr_module(final_bits, version)
+    function_map = matrix_masking.create_function_pattern_matrix(version)
+    masked = matrix_masking.apply_specific_mask_pattern(mask, symbol, function_map)
+    fmt = matrix_layout.FORMAT_INFO_BITS[(ecc_level, mask)]
+    return matrix_layout.place_format_information(masked.to_modules(), fmt, matrix_layout.get_size_from_version(version))
+
+
+class VerifyQrMatrixTest(unittest.TestCase):
+    """verify_qr_matrix accepts exact symbols only."""
+
+    def setUp(self):
+        self.rng = random.Random(13)
+
+    def _random_data(self, version, ecc_level):
+        return bytes(self.rng.getrandbits(8) for _ in range(DATA_CODEWORDS[ecc_level][version]))
+
+    def test_clean_symbols_verify(self):
+        for version, ecc_level in ((1, 'L'), (2, 'M'), (7, 'Q'), (14, 'H'), (40, 'L')):
+            data = self._random_data(version, ecc_level)
+            for mask in range(8):
+                matrix = _build_symbol(data, version, ecc_level, mask)
+                self.assertTrue(qr_verification.verify_qr_matrix(matrix, version, ecc_level, data),
+                                (version, ecc_level, mask))
+
+    def test_damaged_symbol_fails(self):
+        data = self._random_data(5, 'M')
+        matrix = _build_symbol(data, 5, 'M', 3)
+        function_map = matrix_masking.create_function_pattern_matrix(5)
+        row, column = next((r, c) for r in range(len(matrix)) for c in range(len(matrix))
+                           if not function_map[r][c])
+        matrix[row][column] ^= 1  # One wrong data module: correctable, but not exact
+        with self.assertLogs(qr_verification.logger, 'WARNING') as logs:
+            self.assertFalse(qr_verification.verify_qr_matrix(matrix, 5, 'M', data))
+        self.assertIn('needed correction', logs.output[0])
+
+    def test_wrong_level_or_data_fails(self):
+        data = self._random_data(3, 'Q')
+        matrix = _build_symbol(data, 3, 'Q', 0)
+        with self.assertLogs(qr_verification.logger, 'WARNING'):
+            self.assertFalse(qr_verification.verify_qr_matrix(matrix, 3, 'H', data))
+        with self.assertLogs(qr_verification.logger, 'WARNING'):
+            self.assertFalse(qr_verification.verify_qr_matrix(matrix, 3, 'Q', bytes(len(data))))
+
+
+class VerificationCountsTest(unittest.TestCase):
+    """Concurrent updates are all counted."""
+
+    def test_concurrent_records(self):
+        before = qr_verification.get_verification_counts()
+
+        def record(passed):
+            for _ in range(500):
+                qr_verification.record_verification(passed)
+
+        threads = [threading.Thread(target=record, args=(index % 2 == 0,)) for index in range(8)]
+        for thread in threads:
+            thread.start()
+        for thread in threads:
+            thread.join()
+        after = qr_verification.get_verification_counts()
+        self.assertEqual(after["verified"] - before["verified"], 2000)
+        self.assertEqual(after["failed"] - before["failed"], 2000)
+
+
+if __name__ == '__main__':
+    unittest.main()
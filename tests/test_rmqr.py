@@ -0,0 +1,138 @@
+"""
+rMQR Known-Answer Tests
+
+Checks the rMQR tables against ISO/IEC 23941, the codewords of a symbol
+against values derived by hand from the encoding rules of the standard, and
+the module placement against the codeword reader of zxing-cpp.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import os
+import sys
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+import matrix_layout  # noqa: E402
+import matrix_masking  # noqa: E402
+from bit_buffer import BitBuffer  # noqa: E402
+from data_encoding import (  # noqa: E402
+    MODE_ALPHANUMERIC, MODE_BYTE, MODE_KANJI, MODE_NUMERIC, RMQR_CHAR_COUNT_BITS, encode_rmqr_text,
+)
+from error_correction import build_rmqr_final_codewords  # noqa: E402
+from qr_tables import (  # noqa: E402
+    RMQR_BLOCK_GROUPS, RMQR_DATA_CODEWORDS, RMQR_REMAINDER_BITS, RMQR_SIZES, RMQR_TOTAL_CODEWORDS,
+)
+
+# ISO/IEC 23941 Table 3: character count indicator widths, indexed by version indicator
+SPEC_CHAR_COUNT_BITS = {
+    MODE_NUMERIC: (4, 5, 6, 7, 7, 5, 6, 7, 7, 8, 4, 6, 7, 7, 8, 8,
+                   5, 6, 7, 7, 8, 8, 7, 7, 8, 8, 9, 7, 8, 8, 8, 9),
+    MODE_ALPHANUMERIC: (3, 5, 5, 6, 6, 5, 5, 6, 6, 7, 4, 5, 6, 6, 7, 7,
+                        5, 6, 6, 7, 7, 8, 6, 7, 7, 7, 8, 6, 7, 7, 8, 8),
+    MODE_BYTE: (3, 4, 5, 5, 6, 4, 5, 5, 6, 6, 3, 5, 5, 6, 6, 7,
+                4, 5, 6, 6, 7, 7, 6, 6, 7, 7, 7, 6, 6, 7, 7, 8),
+    MODE_KANJI: (2, 3, 4, 5, 5, 3, 4, 5, 5, 6, 2, 4, 5, 5, 6, 6,
+                 3, 5, 5, 6, 6, 7, 5, 5, 6, 6, 7, 5, 6, 6, 6, 7),
+}
+
+# ISO/IEC 23941 data codewords at Levels M and H, indexed by version indicator
+SPEC_DATA_CODEWORDS = {
+    'M': (6, 12, 20, 28, 44, 12, 21, 31, 42, 63, 7, 19, 31, 43, 57, 84,
+          12, 27, 38, 53, 73, 106, 33, 48, 67, 88, 127, 39, 56, 78, 100, 152),
+    'H': (3, 7, 10, 14, 24, 7, 11, 17, 22, 33, 5, 11, 15, 23, 29, 42,
+          7, 13, 20, 29, 35, 54, 15, 26, 31, 48, 69, 21, 28, 38, 56, 76),
+}
+
+
+class RmqrTableTest(unittest.TestCase):
+    """The rMQR tables match the standard."""
+
+    def test_char_count_bits(self):
+        for mode, expected in SPEC_CHAR_COUNT_BITS.items():
+            self.assertEqual(RMQR_CHAR_COUNT_BITS[mode], expected, mode)
+
+    def test_data_codewords(self):
+        for level, expected in SPEC_DATA_CODEWORDS.items():
+            self.assertEqual(RMQR_DATA_CODEWORDS[level], expected, level)
+
+    def test_block_groups(self):
+        # R15x139-H: 1 block of 39 codewords (13 data) and 4 of 40 (14 data)
+        self.assertEqual(RMQR_BLOCK_GROUPS['H'][26], ((1, 13), (4, 14)))
+        # R17x99-M: 2 blocks of 53 codewords (33 data) and 1 of 54 (34 data)
+        self.assertEqual(RMQR_BLOCK_GROUPS['M'][30], ((2, 33), (1, 34)))
+        # R7x139-M is a single block
+        self.assertEqual(RMQR_BLOCK_GROUPS['M'][4], ((1, 44),))
+
+    def test_total_codewords_match_layout(self):
+        for version_indicator in range(len(RMQR_SIZES)):
+            matrix = matrix_layout.generate_rmqr_function_patterns(version_indicator)
+            data_modules = sum(cell is None for row in matrix for cell in row)
+            self.assertEqual(data_modules, RMQR_TOTAL_CODEWORDS[version_indicator] * 8
+                             + RMQR_REMAINDER_BITS[version_indicator], RMQR_SIZES[version_indicator])
+
+
+class RmqrCodewordTest(unittest.TestCase):
+    """Known answers for the codewords of an R7x43-M symbol."""
+
+    def test_numeric_r7x43_m(self):
+        data_buffer, version_indicator = encode_rmqr_text('123456', 'M', max_height=7)
+        self.assertEqual(RMQR_SIZES[version_indicator], (7, 43))
+        # 001 (numeric) 0110 (6 digits) 0001111011 (123) 0111001000 (456) 000 (terminator), 0xEC 0x11 padding
+        self.assertEqual(data_buffer.to_bytes(), bytes.fromhex('2c3db900ec11'))
+        final_codewords = build_rmqr_final_codewords(data_buffer.to_bytes(), version_indicator, 'M')
+        self.assertEqual(final_codewords, bytes.fromhex('2c3db900ec11' 'bf8fe9f49bfe1d'))
+
+
+def _reference_module_order(function_map):
+    """Data modules in reading order, transcribed from ReadRMQRCodewords in zxing-cpp (src/qrcode/QRBitMatrixParser.cpp)."""
+    height, width = len(function_map), len(function_map[0])
+    order = []
+    reading_up = True
+    for x in range(width - 2, 0, -2):  # Skip the right edge
+        for row in range(height):
+            y = height - 1 - row if reading_up else row
+            for xx in (x, x - 1):
+                if not function_map[y][xx]:
+                    order.append((y, xx))
+        reading_up = not reading_up
+    return order
+
+
+class RmqrPlacementTest(unittest.TestCase):
+    """Codewords sit where an independent rMQR reader looks for them."""
+
+    def _build_symbol(self, text, max_height=17):
+        data_buffer, version_indicator = encode_rmqr_text(text, 'M', max_height)
+        final_codewords = build_rmqr_final_codewords(data_buffer.to_bytes(), version_indicator, 'M')
+        final_bits = BitBuffer.from_bytes(final_codewords)
+        final_bits.append_bits(0, RMQR_REMAINDER_BITS[version_indicator])
+        symbol = matrix_layout.generate_rmqr_module(final_bits, version_indicator)
+        function_map = matrix_masking.create_rmqr_function_pattern_matrix(version_indicator)
+        masked = matrix_masking.apply_rmqr_mask(symbol, function_map)
+        return masked.to_modules(), function_map, final_codewords
+
+    @staticmethod
+    def _unmasked(matrix, r, c):
+        return matrix[r][c] ^ ((r // 2 + c // 3) % 2 == 0)  # Mask pattern 4
+
+    def test_r7x43_first_codeword_positions(self):
+        matrix, _, final_codewords = self._build_symbol('123456', max_height=7)
+        # Columns 42 to 35 are function patterns, so codeword 0 starts down the pair (35, 34)
+        positions = [(1, 34), (2, 34), (3, 34), (4, 34), (5, 34), (5, 33), (5, 32), (4, 33)]
+        value = 0
+        for r, c in positions:
+            value = value << 1 | self._unmasked(matrix, r, c)
+        self.assertEqual(value, final_codewords[0])
+
+    def test_codewords_read_back_by_reference_order(self):
+        for text in ('123456', 'HELLO WORLD', 'rMQR ' * 12, '0' * 300):
+            matrix, function_map, final_codewords = self._build_symbol(text)
+            bits = [self._unmasked(matrix, r, c) for r, c in _reference_module_order(function_map)]
+            read = bytes(int(''.join(map(str, bits[i:i + 8])), 2) for i in range(0, len(final_codewords) * 8, 8))
+            self.assertEqual(read, final_codewords, text)
+
+
+if __name__ == '__main__':
+    unittest.main()
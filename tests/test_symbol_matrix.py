@@ -0,0 +1,69 @@
+"""
+Symbol Matrix Tests
+
+Checks SymbolMatrix against the list-of-rows matrices it replaced: state
+codes, row views, copies and light/dark conversion.
+
+Run from the repository root with: python -m unittest discover tests
+"""
+
+import os
+import sys
+import unittest
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
+
+from symbol_matrix import DARK, EMPTY, LIGHT, RESERVED, SymbolMatrix  # noqa: E402
+
+ROWS = [
+    [1, 0, 'R'],
+    [None, 1, None],
+]
+
+
+class SymbolMatrixTest(unittest.TestCase):
+    """SymbolMatrix behaves like the list of rows it was built from."""
+
+    def test_from_rows_state_codes(self):
+        matrix = SymbolMatrix.from_rows(ROWS)
+        self.assertEqual((matrix.height, matrix.width, len(matrix)), (2, 3, 2))
+        self.assertEqual(bytes(matrix.cells), bytes([DARK, LIGHT, RESERVED, EMPTY, DARK, EMPTY]))
+        self.assertEqual(matrix.function_bits, bytes([1, 1, 1, 0, 1, 0]))
+
+    def test_row_views_read_and_write(self):
+        matrix = SymbolMatrix.from_rows(ROWS)
+        self.assertEqual(matrix[1][1], DARK)
+        self.assertEqual(matrix[-1][0], EMPTY)
+        matrix[1][0] = DARK
+        self.assertEqual(matrix.cells[3], DARK)
+        self.assertEqual([list(row) for row in matrix], [[DARK, LIGHT, RESERVED], [DARK, DARK, EMPTY]])
+        with self.assertRaises(IndexError):
+            matrix[2]
+
+    def test_copy_is_independent_and_shares_function_bits(self):
+        matrix = SymbolMatrix.from_rows(ROWS)
+        copy = matrix.copy()
+        self.assertEqual(copy, matrix)
+        copy[0][1] = DARK
+        self.assertEqual(matrix[0][1], LIGHT)
+        self.assertNotEqual(copy, matrix)
+        self.assertIs(copy.function_bits, matrix.function_bits)
+
+    def test_light_dark_conversion(self):
+        matrix = SymbolMatrix.from_rows(ROWS)
+        self.assertEqual(matrix.modules(), bytes([1, 0, 0, 0, 1, 0]))
+        self.assertEqual(matrix.to_rows(), [[1, 0, 0], [0, 1, 0]])
+        final = matrix.to_modules()
+        self.assertEqual(bytes(final.cells), matrix.modules())
+        self.assertEqual(bytes(matrix.cells)[2], RESERVED)  # The original keeps its states
+
+    def test_size_checks(self):
+        self.assertEqual(bytes(SymbolMatrix(2, 2).cells), bytes([EMPTY]) * 4)
+        with self.assertRaises(ValueError):
+            SymbolMatrix(2, 2, cells=bytes(3))
+        with self.assertRaises(ValueError):
+            SymbolMatrix(2, 2, function_bits=bytes(5))
+
+
+if __name__ == '__main__':
+    unittest.main()